@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class is the search index of the {@link android.widget.Filter} of a
+ * {@link LaunchableAdapter}, holding the labels of the catalog as parallel arrays indexed by slot.
+ * It only serves the filter; the catalog itself remains a list of {@link LaunchableActivity}
+ * objects, which hold the components, user serials and statistics.
+ * <p>
+ * Each slot holds a launchable, the label it was indexed with, and the lower case label matched
+ * against. The index is refreshed from the catalog before each search, and only slots whose
+ * launchable or label changed are indexed again, so a search allocates nothing per launchable.
+ * <p>
+ * This class is not thread-safe, it is expected to only be used from the filter thread.
+ *
+ * @param <T> The type of the launchables.
+ */
+final class FilterIndex<T extends LaunchableActivity> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The labels the slots were indexed with, compared by reference to find changed labels.
+     */
+    private String[] mLabels = new String[INITIAL_CAPACITY];
+
+    private Object[] mLaunchables = new Object[INITIAL_CAPACITY];
+
+    /**
+     * The lower case labels, matched against a search.
+     */
+    private String[] mSearchLabels = new String[INITIAL_CAPACITY];
+
+    private int mSize;
+
+    /**
+     * This method copies every indexed launchable to a collection, in catalog order.
+     *
+     * @param out The collection to add the launchables to.
+     */
+    void copyTo(@NonNull final Collection<? super T> out) {
+        for (int i = 0; i < mSize; i++) {
+            out.add(get(i));
+        }
+    }
+
+    /**
+     * This method adds every indexed launchable whose label contains a search to a collection,
+     * in catalog order.
+     *
+     * @param search The lower case text to search for.
+     * @param out    The collection to add the matching launchables to.
+     */
+    void filter(@NonNull final String search, @NonNull final Collection<? super T> out) {
+        for (int i = 0; i < mSize; i++) {
+            if (mSearchLabels[i].contains(search)) {
+                out.add(get(i));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(final int slot) {
+        return (T) mLaunchables[slot];
+    }
+
+    /**
+     * This method refreshes this index from the catalog.
+     *
+     * @param launchables The catalog, in order.
+     */
+    void update(@NonNull final List<? extends T> launchables) {
+        final int size = launchables.size();
+
+        if (size > mLaunchables.length) {
+            final int capacity = Math.max(size, mLaunchables.length * 2);
+
+            mLabels = Arrays.copyOf(mLabels, capacity);
+            mLaunchables = Arrays.copyOf(mLaunchables, capacity);
+            mSearchLabels = Arrays.copyOf(mSearchLabels, capacity);
+        }
+
+        for (int i = 0; i < size; i++) {
+            final T launchable = launchables.get(i);
+            final String label = launchable.toString();
+
+            //noinspection ObjectEquality,StringEquality
+            if (mLaunchables[i] != launchable || mLabels[i] != label) {
+                mLaunchables[i] = launchable;
+                mLabels[i] = label;
+                mSearchLabels[i] = label.toLowerCase();
+            }
+        }
+
+        // Release launchables which are no longer in the catalog.
+        Arrays.fill(mLaunchables, size, Math.max(size, mSize), null);
+        Arrays.fill(mLabels, size, Math.max(size, mSize), null);
+        Arrays.fill(mSearchLabels, size, Math.max(size, mSize), null);
+        mSize = size;
+    }
+}
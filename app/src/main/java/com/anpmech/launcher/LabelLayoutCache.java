@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher;
+
+import android.os.Build;
+import android.text.PrecomputedText;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class holds the text layouts of launchable labels, measured in the background with
+ * {@link PrecomputedText}, so binding a label does not measure it on the main thread.
+ * <p>
+ * The layouts are only valid for the text metrics they were measured with. Views inflated after
+ * a configuration change may have different metrics, in which case every layout is discarded and
+ * measured again for the new metrics.
+ * <p>
+ * At most {@link #MAX_LAYOUTS} layouts are kept, the least recently bound are discarded first, so
+ * the cache holds the labels around those on screen.
+ * <p>
+ * {@link #get(String, Object)} and {@link #setParams(PrecomputedText.Params)} are expected to
+ * only be called from the main thread.
+ */
+@RequiresApi(api = Build.VERSION_CODES.P)
+final class LabelLayoutCache {
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * The maximum number of layouts kept, several screenfuls of labels.
+     */
+    private static final int MAX_LAYOUTS = 256;
+
+    private static final String TAG = "LabelLayoutCache";
+
+    /**
+     * The measured layouts, keyed by label, least recently used first. Synchronize to this Map
+     * when accessing it.
+     */
+    private final Map<String, PrecomputedText> mLayouts =
+            new LinkedHashMap<String, PrecomputedText>(MAX_LAYOUTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, PrecomputedText> eldest) {
+                    return size() > MAX_LAYOUTS;
+                }
+            };
+
+    /**
+     * The labels waiting to be measured.
+     */
+    private final Set<String> mPending =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The metrics the layouts are measured with, null until the first view is inflated.
+     */
+    private volatile PrecomputedText.Params mParams;
+
+    /**
+     * This method releases every layout, they are measured again as labels are bound.
+     */
+    void clear() {
+        synchronized (mLayouts) {
+            mLayouts.clear();
+        }
+    }
+
+    /**
+     * This method returns the text to bind a label with.
+     *
+     * @param label  The label to bind.
+     * @param params The token returned by {@link #setParams(PrecomputedText.Params)} for the
+     *               view the label is bound to.
+     * @return The measured layout of the label, or the label itself if it was not yet measured
+     * with the metrics of the view.
+     */
+    @NonNull
+    CharSequence get(@NonNull final String label, @Nullable final Object params) {
+        final PrecomputedText.Params current = mParams;
+        CharSequence text = label;
+
+        //noinspection ObjectEquality
+        if (params == current && current != null) {
+            final PrecomputedText layout;
+
+            synchronized (mLayouts) {
+                PrecomputedText stored = mLayouts.get(label);
+
+                // A layout may have been measured just before the metrics changed.
+                //noinspection ObjectEquality
+                if (stored != null && stored.getParams() != current) {
+                    mLayouts.remove(label);
+                    stored = null;
+                }
+
+                layout = stored;
+            }
+
+            if (layout == null) {
+                measure(Collections.singletonList(label), current);
+            } else {
+                text = layout;
+            }
+        }
+
+        return text;
+    }
+
+    /**
+     * This method measures labels in the background, skipping those already measured. Only the
+     * first labels which fit in this cache are measured.
+     *
+     * @param launchables The launchables to measure the labels of, in display order.
+     */
+    void prefetch(@NonNull final Iterable<? extends LaunchableActivity> launchables) {
+        final PrecomputedText.Params params = mParams;
+
+        if (params != null) {
+            final Collection<String> labels = new ArrayList<>();
+            final Iterator<? extends LaunchableActivity> iterator = launchables.iterator();
+
+            while (iterator.hasNext() && labels.size() < MAX_LAYOUTS) {
+                labels.add(iterator.next().toString());
+            }
+
+            measure(labels, params);
+        }
+    }
+
+    private void measure(final Collection<String> labels, final PrecomputedText.Params params) {
+        final Collection<String> queued = new ArrayList<>(labels.size());
+
+        synchronized (mLayouts) {
+            for (final String label : labels) {
+                if (!mLayouts.containsKey(label) && mPending.add(label)) {
+                    queued.add(label);
+                }
+            }
+        }
+
+        if (!queued.isEmpty()) {
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (final String label : queued) {
+                        mPending.remove(label);
+
+                        //noinspection ObjectEquality
+                        if (params == mParams) {
+                            final PrecomputedText layout = PrecomputedText.create(label, params);
+
+                            synchronized (mLayouts) {
+                                mLayouts.put(label, layout);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * This method sets the text metrics of a newly inflated view. If they differ from the
+     * metrics the layouts were measured with, every layout is discarded.
+     *
+     * @param params The text metrics of the view.
+     * @return A token identifying the metrics, to pass to {@link #get(String, Object)}.
+     */
+    @NonNull
+    Object setParams(@NonNull final PrecomputedText.Params params) {
+        PrecomputedText.Params current = mParams;
+
+        if (!params.equals(current)) {
+            current = params;
+            mParams = params;
+
+            synchronized (mLayouts) {
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Text metrics changed, discarding " + mLayouts.size() +
+                            " layouts.");
+                }
+                mLayouts.clear();
+            }
+        }
+
+        return current;
+    }
+}
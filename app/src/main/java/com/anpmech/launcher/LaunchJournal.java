@@ -0,0 +1,475 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * This class is an append-only journal of {@link LaunchableActivity} launches.
+ * <p>
+ * Every launch is appended as a (component, user serial, timestamp) row. Once the journal
+ * grows past {@link #COMPACTION_THRESHOLD} events, a background compaction folds the events into
+ * an exponentially decayed frecency score per launchable, and removes the folded events. This
+ * keeps appends cheap while bounding the size of the journal.
+ * <p>
+ * The scores are also kept in memory, loaded once by {@link #loadScores()} and updated by every
+ * append, so {@link #getScores()} never reads the database.
+ * <p>
+ * Launches are also counted by the hour of the day they occurred in. These counts are not
+ * folded by compaction, and are used to predict which launchables are likely to be launched at
+ * the current time of day.
+ */
+public class LaunchJournal extends SQLiteOpenHelper {
+
+    /**
+     * The number of journal events which triggers a compaction.
+     */
+    private static final int COMPACTION_THRESHOLD = 256;
+
+    /**
+     * The single background thread used to compact all journals in this process.
+     */
+    private static final Executor COMPACTOR = Executors.newSingleThreadExecutor();
+
+    private static final String DATABASE_NAME = "LaunchJournal";
+
+    private static final int DATABASE_VERSION = 2;
+
+    /**
+     * The time, in seconds, it takes for the weight of a single launch to halve.
+     */
+    private static final double HALF_LIFE = 7 * 24 * 60 * 60;
+
+    private static final String KEY_COMPONENT = "Component";
+
+    private static final String KEY_COUNT = "Count";
+
+    private static final String KEY_HOUR = "Hour";
+
+    private static final String KEY_ID = "Id";
+
+    private static final String KEY_SCORE = "Score";
+
+    private static final String KEY_SCORE_TIMESTAMP = "ScoreTimestamp";
+
+    private static final String KEY_TIMESTAMP = "Timestamp";
+
+    private static final String KEY_USER_SERIAL = "UserSerial";
+
+    /**
+     * Scores which have decayed below this value are removed on compaction.
+     */
+    private static final double MINIMUM_SCORE = 0.01;
+
+    private static final String TABLE_EVENTS = "LaunchEvents";
+
+    private static final String TABLE_HOURS = "HourlyLaunches";
+
+    private static final String TABLE_SCORES = "FrecencyScores";
+
+    private static final String TAG = "LaunchJournal";
+
+    /**
+     * Lock used to serialize appends with compaction.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * The number of events currently in the journal, {@code -1} if not yet counted.
+     */
+    private long mEventCount = -1L;
+
+    /**
+     * Whether a compaction has been queued, but not yet completed.
+     */
+    private boolean mCompactionQueued;
+
+    /**
+     * The in-memory scores, keyed by {@link #getKey(String, long)}, each as a pair of the score
+     * and the time, in seconds, it was last updated. Synchronize to this Map when accessing it.
+     */
+    private final Map<String, double[]> mScores = new HashMap<>();
+
+    public LaunchJournal(final Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * This method returns the weight of a score, after decaying it from the time it was recorded
+     * to now.
+     *
+     * @param score     The score to decay.
+     * @param timestamp The time, in seconds, the score was recorded.
+     * @param now       The current time, in seconds.
+     * @return The decayed score.
+     */
+    private static double decay(final double score, final long timestamp, final long now) {
+        final long age = Math.max(0L, now - timestamp);
+
+        return score * Math.pow(2.0, -age / HALF_LIFE);
+    }
+
+    /**
+     * This method returns the key used to identify a launchable in this journal, the same as
+     * {@link LaunchableActivity#getKey()}.
+     *
+     * @param component  The component of the launchable.
+     * @param userSerial The user serial of the launchable.
+     * @return The key to identify the launchable with.
+     */
+    private static String getKey(final String component, final long userSerial) {
+        return component + '#' + userSerial;
+    }
+
+    /**
+     * This method appends a launch of the {@link LaunchableActivity} to this journal.
+     *
+     * @param launchable The launchable which was launched.
+     */
+    public void append(@NonNull final LaunchableActivity launchable) {
+        final ComponentName name = launchable.getComponent();
+
+        if (name != null) {
+            final ContentValues values = new ContentValues(3);
+            values.put(KEY_COMPONENT, name.flattenToShortString());
+            values.put(KEY_USER_SERIAL, launchable.getUserSerial());
+            values.put(KEY_TIMESTAMP, System.currentTimeMillis() / 1000);
+
+            synchronized (mLock) {
+                final SQLiteDatabase db = getWritableDatabase();
+
+                if (mEventCount == -1L) {
+                    mEventCount = DatabaseUtils.queryNumEntries(db, TABLE_EVENTS);
+                }
+
+                db.insert(TABLE_EVENTS, null, values);
+                mEventCount++;
+                countHourly(db, values.getAsString(KEY_COMPONENT),
+                        launchable.getUserSerial());
+                addLaunch(mScores, launchable.getKey(), values.getAsLong(KEY_TIMESTAMP));
+
+                if (mEventCount >= COMPACTION_THRESHOLD && !mCompactionQueued) {
+                    mCompactionQueued = true;
+                    COMPACTOR.execute(new Compaction());
+                }
+            }
+        }
+    }
+
+    /**
+     * This method folds all events in this journal into their frecency scores and removes the
+     * folded events.
+     */
+    @VisibleForTesting
+    void compact() {
+        final long now = System.currentTimeMillis() / 1000;
+        final Map<String, Double> scores = new HashMap<>();
+        final Map<String, String[]> keys = new HashMap<>();
+
+        synchronized (mLock) {
+            final SQLiteDatabase db = getWritableDatabase();
+
+            db.beginTransaction();
+            try {
+                readScores(db, now, scores, keys);
+
+                db.delete(TABLE_SCORES, null, null);
+                for (final Map.Entry<String, Double> entry : scores.entrySet()) {
+                    final double score = entry.getValue();
+
+                    if (score >= MINIMUM_SCORE) {
+                        final String[] key = keys.get(entry.getKey());
+                        final ContentValues values = new ContentValues(4);
+
+                        values.put(KEY_COMPONENT, key[0]);
+                        values.put(KEY_USER_SERIAL, Long.parseLong(key[1]));
+                        values.put(KEY_SCORE, score);
+                        values.put(KEY_SCORE_TIMESTAMP, now);
+                        db.insert(TABLE_SCORES, null, values);
+                    }
+                }
+
+                db.delete(TABLE_EVENTS, null, null);
+                db.setTransactionSuccessful();
+                mEventCount = 0L;
+            } finally {
+                db.endTransaction();
+                mCompactionQueued = false;
+            }
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Compacted launch journal into " + scores.size() + " scores.");
+        }
+    }
+
+    /**
+     * This method adds a launch to in-memory scores.
+     *
+     * @param scores    The scores to add the launch to, as kept in {@link #mScores}.
+     * @param key       The key of the launchable which was launched.
+     * @param timestamp The time, in seconds, of the launch.
+     */
+    static void addLaunch(final Map<String, double[]> scores, final String key,
+                          final long timestamp) {
+        synchronized (scores) {
+            final double[] score = scores.get(key);
+
+            if (score == null) {
+                scores.put(key, new double[]{1.0, timestamp});
+            } else {
+                score[0] = decay(score[0], (long) score[1], timestamp) + 1.0;
+                score[1] = Math.max(score[1], timestamp);
+            }
+        }
+    }
+
+    /**
+     * This method returns in-memory scores, decayed to a point in time.
+     *
+     * @param scores The scores, as kept in {@link #mScores}.
+     * @param now    The time, in seconds, to decay the scores to.
+     * @return A Map containing the key as the key and the decayed score as the value.
+     */
+    static Map<String, Double> getScores(final Map<String, double[]> scores, final long now) {
+        final Map<String, Double> decayed;
+
+        synchronized (scores) {
+            decayed = new HashMap<>(scores.size());
+
+            for (final Map.Entry<String, double[]> entry : scores.entrySet()) {
+                final double[] score = entry.getValue();
+
+                decayed.put(entry.getKey(), decay(score[0], (long) score[1], now));
+            }
+        }
+
+        return decayed;
+    }
+
+    /**
+     * This method returns the current frecency scores of all launchables in this journal, from
+     * memory. Launches are only included once {@link #loadScores()} has completed, or were
+     * appended by this instance.
+     *
+     * @return A Map containing the {@link LaunchableActivity#getKey()} as the key and the
+     * frecency score as the value.
+     */
+    @NonNull
+    public Map<String, Double> getScores() {
+        return getScores(mScores, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * This method loads the frecency scores from the database into memory.
+     * <p>
+     * This method performs disk I/O, and is expected to be called once, from a background
+     * thread.
+     */
+    public void loadScores() {
+        final long now = System.currentTimeMillis() / 1000;
+        final Map<String, Double> stored = new HashMap<>();
+
+        // Appends are serialized with the load, so no launch is lost or counted twice.
+        synchronized (mLock) {
+            readScores(getReadableDatabase(), now, stored, null);
+
+            synchronized (mScores) {
+                mScores.clear();
+                for (final Map.Entry<String, Double> entry : stored.entrySet()) {
+                    mScores.put(entry.getKey(), new double[]{entry.getValue(), now});
+                }
+            }
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Loaded " + stored.size() + " frecency scores.");
+        }
+    }
+
+    /**
+     * This method counts a launch in the hour of the day it occurred in.
+     *
+     * @param db         The database to write to.
+     * @param component  The component of the launchable.
+     * @param userSerial The user serial of the launchable.
+     */
+    private static void countHourly(final SQLiteDatabase db, final String component,
+                                    final long userSerial) {
+        final Object[] args = {component, userSerial,
+                Calendar.getInstance().get(Calendar.HOUR_OF_DAY)};
+
+        db.execSQL(String.format("INSERT OR IGNORE INTO %s (%s, %s, %s, %s) VALUES (?, ?, ?, 0);",
+                TABLE_HOURS, KEY_COMPONENT, KEY_USER_SERIAL, KEY_HOUR, KEY_COUNT), args);
+        db.execSQL(String.format("UPDATE %s SET %s = %s + 1 WHERE %s=? AND %s=? AND %s=?;",
+                TABLE_HOURS, KEY_COUNT, KEY_COUNT, KEY_COMPONENT, KEY_USER_SERIAL, KEY_HOUR),
+                args);
+    }
+
+    private static void createHourTable(final SQLiteDatabase db) {
+        db.execSQL(String.format("CREATE TABLE %s (%s TEXT, %s INTEGER, %s INTEGER, %s INTEGER, " +
+                        "PRIMARY KEY (%s, %s, %s));", TABLE_HOURS, KEY_COMPONENT,
+                KEY_USER_SERIAL, KEY_HOUR, KEY_COUNT, KEY_COMPONENT, KEY_USER_SERIAL, KEY_HOUR));
+    }
+
+    /**
+     * This method returns the launchables most likely to be launched at the current time of day,
+     * by their launch counts in the current hour, and to a lesser degree the adjacent hours.
+     *
+     * @param limit The maximum number of launchables to return.
+     * @return The {@link LaunchableActivity#getKey()} of the likely launchables, most likely
+     * first.
+     */
+    @NonNull
+    public List<String> getLikely(final int limit) {
+        final int hour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        final String[] columns = {KEY_COMPONENT, KEY_USER_SERIAL, KEY_HOUR, KEY_COUNT};
+        final String[] whereArgs = {Integer.toString(hour), Integer.toString((hour + 23) % 24),
+                Integer.toString((hour + 1) % 24)};
+        final Map<String, Double> weights = new HashMap<>();
+
+        synchronized (mLock) {
+            final Cursor cursor = getReadableDatabase().query(TABLE_HOURS, columns,
+                    KEY_HOUR + " IN (?, ?, ?)", whereArgs, null, null, null);
+
+            while (cursor.moveToNext()) {
+                final int count = cursor.getInt(3);
+                final double weight;
+
+                if (cursor.getInt(2) == hour) {
+                    weight = count;
+                } else {
+                    weight = count / 2.0;
+                }
+
+                addScore(weights, null, cursor.getString(0), cursor.getLong(1), weight);
+            }
+            cursor.close();
+        }
+
+        final List<Map.Entry<String, Double>> entries = new ArrayList<>(weights.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Double>>() {
+            @Override
+            public int compare(final Map.Entry<String, Double> lhs,
+                               final Map.Entry<String, Double> rhs) {
+                return Double.compare(rhs.getValue(), lhs.getValue());
+            }
+        });
+
+        final List<String> likely = new ArrayList<>(Math.min(limit, entries.size()));
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            likely.add(entries.get(i).getKey());
+        }
+
+        return likely;
+    }
+
+    @Override
+    public void onCreate(final SQLiteDatabase db) {
+        db.execSQL(String.format("CREATE TABLE %s (%s INTEGER PRIMARY KEY, %s TEXT, " +
+                        "%s INTEGER, %s INTEGER);", TABLE_EVENTS, KEY_ID, KEY_COMPONENT,
+                KEY_USER_SERIAL, KEY_TIMESTAMP));
+        db.execSQL(String.format("CREATE TABLE %s (%s TEXT, %s INTEGER, %s REAL, %s INTEGER, " +
+                        "PRIMARY KEY (%s, %s));", TABLE_SCORES, KEY_COMPONENT, KEY_USER_SERIAL,
+                KEY_SCORE, KEY_SCORE_TIMESTAMP, KEY_COMPONENT, KEY_USER_SERIAL));
+        createHourTable(db);
+    }
+
+    @Override
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        // Version 2 only adds the hourly counts, the existing journal is kept.
+        if (oldVersion < 2) {
+            createHourTable(db);
+        }
+    }
+
+    /**
+     * This method reads both the folded scores and the journal events, decayed to {@code now}.
+     *
+     * @param db     The database to read from.
+     * @param now    The current time, in seconds.
+     * @param scores The Map to add the scores to, keyed by {@link #getKey(String, long)}.
+     * @param keys   If not null, the Map to add the component and user serial for each key to.
+     */
+    private static void readScores(final SQLiteDatabase db, final long now,
+                                   final Map<String, Double> scores,
+                                   @Nullable final Map<String, String[]> keys) {
+        final String[] scoreColumns = {KEY_COMPONENT, KEY_USER_SERIAL, KEY_SCORE,
+                KEY_SCORE_TIMESTAMP};
+        final String[] eventColumns = {KEY_COMPONENT, KEY_USER_SERIAL, KEY_TIMESTAMP};
+        Cursor cursor = db.query(TABLE_SCORES, scoreColumns, null, null, null, null, null);
+
+        while (cursor.moveToNext()) {
+            addScore(scores, keys, cursor.getString(0), cursor.getLong(1),
+                    decay(cursor.getDouble(2), cursor.getLong(3), now));
+        }
+        cursor.close();
+
+        cursor = db.query(TABLE_EVENTS, eventColumns, null, null, null, null, null);
+        while (cursor.moveToNext()) {
+            addScore(scores, keys, cursor.getString(0), cursor.getLong(1),
+                    decay(1.0, cursor.getLong(2), now));
+        }
+        cursor.close();
+    }
+
+    private static void addScore(final Map<String, Double> scores,
+                                 @Nullable final Map<String, String[]> keys,
+                                 final String component, final long userSerial,
+                                 final double score) {
+        final String key = getKey(component, userSerial);
+        final Double current = scores.get(key);
+
+        if (current == null) {
+            scores.put(key, score);
+
+            if (keys != null) {
+                keys.put(key, new String[]{component, Long.toString(userSerial)});
+            }
+        } else {
+            scores.put(key, current + score);
+        }
+    }
+
+    private final class Compaction implements Runnable {
+
+        @Override
+        public void run() {
+            compact();
+        }
+    }
+}
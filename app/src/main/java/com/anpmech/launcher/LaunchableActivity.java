@@ -18,16 +18,18 @@ package com.anpmech.launcher;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.UserHandle;
 import android.os.UserManager;
+import android.util.Log;
 
 import androidx.annotation.DeprecatedSinceApi;
 import androidx.annotation.DrawableRes;
@@ -35,9 +37,19 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 
 public class LaunchableActivity {
 
+    /**
+     * The components in use by any launchable, so equal components share a single instance.
+     */
+    private static final Map<ComponentName, WeakReference<ComponentName>> COMPONENTS =
+            new WeakHashMap<>();
+
     private static final String TAG = "LaunchableActivity";
 
     private final String mActivityLabel;
@@ -45,7 +57,17 @@ public class LaunchableActivity {
     @DrawableRes
     private final int mIconResource;
 
-    private final Intent mLaunchIntent;
+    /**
+     * The component of this activity, shared with equal components, null if this activity was
+     * created from an {@link Intent} without a component.
+     */
+    private final ComponentName mComponent;
+
+    /**
+     * The {@link Intent} this activity was created from, null if the launch {@link Intent} is
+     * created from {@link #mComponent} on demand.
+     */
+    private final Intent mIntent;
 
     private final Object mLock = new Object();
 
@@ -57,6 +79,8 @@ public class LaunchableActivity {
 
     private Drawable mActivityIcon;
 
+    private double mFrecency;
+
     private long mLastLaunchTime;
 
     private int mPriority;
@@ -65,6 +89,22 @@ public class LaunchableActivity {
 
     private int mUsagesQuantity;
 
+    /**
+     * The slot of this activity in a {@link com.anpmech.launcher.usage.UsageStatsCache}, -1 if
+     * none was assigned.
+     */
+    private int mUsageSlot = -1;
+
+    /**
+     * The key returned by {@link #getKey()}, null until computed.
+     */
+    private volatile String mKey;
+
+    /**
+     * The identifier returned by {@link #getStableId()}, {@code 0L} until computed.
+     */
+    private volatile long mStableId;
+
     /**
      * This is the constructor for LaunchableActivities, used in a {@link LaunchableAdapter}, for
      * API 21+.
@@ -76,7 +116,8 @@ public class LaunchableActivity {
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     public LaunchableActivity(@NonNull final LauncherActivityInfo info, final UserManager manager,
                               final boolean shouldLoadIcon) {
-        mLaunchIntent = getLaunchableIntent(info.getComponentName());
+        mComponent = intern(info.getComponentName());
+        mIntent = null;
         mActivityLabel = info.getLabel().toString();
         mIconResource = Integer.MIN_VALUE;
         mUserSerial = manager.getSerialNumberForUser(info.getUser());
@@ -97,7 +138,8 @@ public class LaunchableActivity {
      */
     public LaunchableActivity(@NonNull final Intent intent, @NonNull final String label,
                               @DrawableRes final int icon) {
-        mLaunchIntent = intent;
+        mComponent = intern(intent.getComponent());
+        mIntent = intent;
         mActivityLabel = label;
         mIconResource = icon;
         mUserSerial = Long.MIN_VALUE;
@@ -105,35 +147,69 @@ public class LaunchableActivity {
 
     /**
      * This is the constructor for LaunchableActivities, used in a {@link LaunchableAdapter}, for
-     * APIs 15-20. If this constructor is used, {@code LaunchableActivity.getActivityIcon()} will
+     * APIs 15-23. If this constructor is used, {@code LaunchableActivity.getActivityIcon()} will
      * need to be called to load the icon from the icon resource.
      *
-     * @param info    Information to derive the LaunchableActivity from.
-     * @param prefs   The {@link SharedPreferences} to load the label for this from.
-     * @param manager The {@link PackageManager} to load the label for this from. If null, the
-     *                local store will not cache the label.
+     * @param info  Information to derive the LaunchableActivity from.
+     * @param label The label for this activity, or a placeholder until a copy is created with
+     *              the loaded label.
      */
-    @DeprecatedSinceApi(api = Build.VERSION_CODES.N, message = "Later APIs use addToAdapter24()")
-    public LaunchableActivity(@NonNull final ResolveInfo info,
-                              @NonNull final SharedPreferences prefs,
-                              @Nullable final PackageManager manager) {
+    @DeprecatedSinceApi(api = Build.VERSION_CODES.N, message = "Later APIs use createLaunchables24()")
+    public LaunchableActivity(@NonNull final ResolveInfo info, @NonNull final String label) {
         final ActivityInfo activityInfo = info.activityInfo;
-        final ComponentName name =
-                new ComponentName(activityInfo.packageName, activityInfo.name);
-        mLaunchIntent = getLaunchableIntent(name);
+
+        mComponent = intern(new ComponentName(activityInfo.packageName, activityInfo.name));
+        mIntent = null;
         mIconResource = info.getIconResource();
+        mActivityLabel = label;
+        mUserSerial = Long.MIN_VALUE;
+    }
 
-        /**
-         * Returns the actual label from the info and stores it locally, or retrieve it locally.
-         */
-        if (prefs.contains(activityInfo.packageName) && manager != null) {
-            mActivityLabel = prefs.getString(activityInfo.packageName, null);
-        } else {
-            mActivityLabel = info.loadLabel(manager).toString();
-            prefs.edit().putString(activityInfo.packageName, mActivityLabel).apply();
+    /**
+     * This is the constructor used to restore a {@code LaunchableActivity} from a
+     * {@link com.anpmech.launcher.catalog.CatalogSnapshot}. The icon will be loaded from the
+     * system when {@code LaunchableActivity.getActivityIcon()} is called.
+     *
+     * @param name       The component of the activity.
+     * @param label      The label to construct this object with.
+     * @param userSerial The user serial for this activity, {@code Long.MIN_VALUE} if unknown.
+     */
+    public LaunchableActivity(@NonNull final ComponentName name, @NonNull final String label,
+                              final long userSerial) {
+        mComponent = intern(name);
+        mIntent = null;
+        mActivityLabel = label;
+        mIconResource = Integer.MIN_VALUE;
+        mUserSerial = userSerial;
+    }
+
+    /**
+     * This method returns the instance in use for a component, so equal components of different
+     * launchables, such as those restored from a snapshot and those enumerated, share memory.
+     *
+     * @param component The component to intern.
+     * @return An instance equal to the component, null if the component is null.
+     */
+    @Nullable
+    private static ComponentName intern(@Nullable final ComponentName component) {
+        ComponentName interned = null;
+
+        if (component != null) {
+            synchronized (COMPONENTS) {
+                final WeakReference<ComponentName> reference = COMPONENTS.get(component);
+
+                if (reference != null) {
+                    interned = reference.get();
+                }
+
+                if (interned == null) {
+                    interned = component;
+                    COMPONENTS.put(component, new WeakReference<>(component));
+                }
+            }
         }
 
-        mUserSerial = Long.MIN_VALUE;
+        return interned;
     }
 
     private static Intent getLaunchableIntent(final ComponentName componentName) {
@@ -163,7 +239,11 @@ public class LaunchableActivity {
     public Drawable getActivityIcon(final Context context, final int iconSizePixels) {
         if (!isIconLoaded()) {
             synchronized (mLock) {
-                mActivityIcon = context.getResources().getDrawable(mIconResource);
+                if (mIconResource == Integer.MIN_VALUE) {
+                    mActivityIcon = loadSystemIcon(context);
+                } else {
+                    mActivityIcon = context.getResources().getDrawable(mIconResource);
+                }
 
                 //rescaling the icon if it is bigger than the target size
                 //TODO do this when it is not a bitmap drawable?
@@ -182,6 +262,46 @@ public class LaunchableActivity {
         return mActivityIcon;
     }
 
+    /**
+     * This method loads the icon for this activity from the system, for launchables which were not
+     * created with an icon resource.
+     *
+     * @param context The current context.
+     * @return The icon for this activity, or the default activity icon if not found.
+     */
+    private Drawable loadSystemIcon(final Context context) {
+        final PackageManager pm = context.getPackageManager();
+        Drawable icon = null;
+
+        if (isUserKnown() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            final UserManager userManager =
+                    (UserManager) context.getSystemService(Context.USER_SERVICE);
+            final LauncherApps launcherApps =
+                    (LauncherApps) context.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+            final UserHandle user = userManager.getUserForSerialNumber(mUserSerial);
+
+            if (user != null) {
+                final LauncherActivityInfo info =
+                        launcherApps.resolveActivity(getLaunchIntent(), user);
+
+                if (info != null) {
+                    icon = info.getBadgedIcon(0);
+                }
+            }
+        }
+
+        if (icon == null) {
+            try {
+                icon = pm.getActivityIcon(getComponent());
+            } catch (final PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Activity not found while loading icon: " + getComponent(), e);
+                icon = pm.getDefaultActivityIcon();
+            }
+        }
+
+        return icon;
+    }
+
     /**
      * The user serial, to be used to retrieve a {@link android.os.UserHandle} as necessary.
      *
@@ -194,11 +314,101 @@ public class LaunchableActivity {
     }
 
     public ComponentName getComponent() {
-        return mLaunchIntent.getComponent();
+        return mComponent;
+    }
+
+    /**
+     * This method returns a key which identifies this activity by component and user.
+     *
+     * @return The key identifying this activity, null if this activity has no component.
+     */
+    @Nullable
+    public String getKey() {
+        String key = mKey;
+
+        if (key == null && mComponent != null) {
+            key = mComponent.flattenToShortString() + '#' + mUserSerial;
+            mKey = key;
+        }
+
+        return key;
+    }
+
+    /**
+     * This method returns an identifier for this activity which does not change with its position,
+     * derived from the component and user, or the label if this activity has no component.
+     *
+     * @return A 64-bit identifier for this activity.
+     */
+    public long getStableId() {
+        long id = mStableId;
+
+        if (id == 0L) {
+            final String key = getKey();
+            final String source = key == null ? mActivityLabel : key;
+            final int length = source.length();
+
+            // 64-bit FNV-1a.
+            id = 0xcbf29ce484222325L;
+            for (int i = 0; i < length; i++) {
+                id ^= source.charAt(i);
+                id *= 0x100000001b3L;
+            }
+            mStableId = id;
+        }
+
+        return id;
     }
 
+    /**
+     * This method returns the {@link Intent} to launch this activity with. Unless this activity
+     * was created from an {@link Intent}, a new one is created for every call.
+     *
+     * @return The {@link Intent} to launch this activity with.
+     */
     public Intent getLaunchIntent() {
-        return mLaunchIntent;
+        final Intent intent;
+
+        if (mIntent == null) {
+            intent = getLaunchableIntent(mComponent);
+        } else {
+            intent = mIntent;
+        }
+
+        return intent;
+    }
+
+    /**
+     * This method returns the time decayed launch score of this launchable.
+     *
+     * @return The frecency score, as calculated by the {@link LaunchJournal}.
+     */
+    public double getFrecency() {
+        return mFrecency;
+    }
+
+    /**
+     * This method sets the time decayed launch score of this launchable.
+     *
+     * @param frecency The frecency score, as calculated by the {@link LaunchJournal}.
+     */
+    public void setFrecency(final double frecency) {
+        mFrecency = frecency;
+    }
+
+    /**
+     * This method copies the persistent information and the statistics used for sorting from
+     * another launchable, used when this launchable replaces it.
+     *
+     * @param other The launchable to copy from.
+     */
+    public void copyStatistics(@NonNull final LaunchableActivity other) {
+        mFrecency = other.mFrecency;
+        mLastLaunchTime = other.mLastLaunchTime;
+        mPriority = other.mPriority;
+        mUsageSlot = other.mUsageSlot;
+        mUsageTime = other.mUsageTime;
+        mUsagesQuantity = other.mUsagesQuantity;
     }
 
     public long getLaunchTime() {
@@ -225,6 +435,26 @@ public class LaunchableActivity {
         mUsagesQuantity = usagesQuantity;
     }
 
+    /**
+     * This method returns the slot of this activity in a
+     * {@link com.anpmech.launcher.usage.UsageStatsCache}.
+     *
+     * @return The slot, -1 if none was assigned.
+     */
+    public int getUsageSlot() {
+        return mUsageSlot;
+    }
+
+    /**
+     * This method sets the slot of this activity in a
+     * {@link com.anpmech.launcher.usage.UsageStatsCache}.
+     *
+     * @param slot The slot assigned to this activity.
+     */
+    public void setUsageSlot(final int slot) {
+        mUsageSlot = slot;
+    }
+
     /**
      * This method returns the usage time.
      * <p>
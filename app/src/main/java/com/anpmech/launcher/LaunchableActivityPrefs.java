@@ -65,8 +65,6 @@ public class LaunchableActivityPrefs extends SQLiteOpenHelper {
         final SQLiteDatabase db = getWritableDatabase();
 
         deletePreference(db, launchableActivity.getComponent().getClassName());
-
-        db.close();
     }
 
     @Override
@@ -165,7 +163,5 @@ public class LaunchableActivityPrefs extends SQLiteOpenHelper {
             values.put(KEY_CLASSNAME, className);
             db.replace(TABLE_NAME, null, values);
         }
-
-        db.close();
     }
 }
@@ -15,11 +15,9 @@
 
 package com.anpmech.launcher;
 
-import android.annotation.TargetApi;
-import android.app.Activity;
 import android.app.SearchManager;
-import android.app.usage.UsageStats;
 import android.app.usage.UsageStatsManager;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.res.Resources;
@@ -37,12 +35,17 @@ import android.widget.TextView;
 import androidx.annotation.LayoutRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
 
 import com.anpmech.launcher.comparators.AlphabeticalOrder;
+import com.anpmech.launcher.comparators.ChainedOrder;
+import com.anpmech.launcher.comparators.FrecencyOrder;
 import com.anpmech.launcher.comparators.PinToTop;
 import com.anpmech.launcher.comparators.RecentOrder;
 import com.anpmech.launcher.comparators.UsageOrder;
 import com.anpmech.launcher.threading.SimpleTaskConsumerManager;
+import com.anpmech.launcher.usage.UsageStatsCache;
 
 import java.text.Normalizer;
 import java.util.ArrayList;
@@ -50,8 +53,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -66,6 +72,12 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
      */
     public static final Comparator<LaunchableActivity> ALPHABETICAL = new AlphabeticalOrder();
 
+    /**
+     * This comparator orders {@link LaunchableActivity} objects with the highest time decayed
+     * launch frequency at the head of the list.
+     */
+    public static final Comparator<LaunchableActivity> FRECENCY = new FrecencyOrder();
+
     /**
      * This comparator orders {@link LaunchableActivity} objects with "pins" at the head of the
      * list.
@@ -89,6 +101,23 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
 
     private static final String TAG = "LaunchableAdapter";
 
+    /**
+     * The trim tier releasing icons of launchables which are not displayed at all.
+     */
+    private static final int TRIM_HIDDEN = 0;
+
+    /**
+     * The trim tier releasing icons of launchables which are not on screen.
+     */
+    private static final int TRIM_OFF_SCREEN = 1;
+
+    /**
+     * The trim tier releasing every icon.
+     */
+    private static final int TRIM_ALL = 2;
+
+    private static final String[] TRIM_TIER_NAMES = {"hidden", "off-screen", "all"};
+
     /**
      * The {@link Filter} used by this list {@code Adapter}.
      */
@@ -103,6 +132,18 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
 
     private final ImageLoadingTask.Factory mImageTasks;
 
+    /**
+     * This field contains the journal used to record launches of {@link LaunchableActivity}
+     * objects. It is used from several threads for the lifetime of this adapter, and is never
+     * closed.
+     */
+    private final LaunchJournal mJournal;
+
+    /**
+     * The label layouts measured in the background, null prior to API 28.
+     */
+    private final LabelLayoutCache mLabelLayouts;
+
     /**
      * Lock used to modify the content of {@link #mObjects}. Any write operation
      * performed on the array should be synchronized on this lock. This lock is also
@@ -119,13 +160,32 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
 
     /**
      * This field contains the database used to store persistent values for
-     * {@link LaunchableActivity} objects.
+     * {@link LaunchableActivity} objects. Like {@link #mJournal}, it is never closed.
      */
     private final LaunchableActivityPrefs mPrefs;
 
     private final T mSearch;
 
-    private final Map<String, UsageStats> mUsageMap;
+    /**
+     * The aggregated statistics from the Android {@link UsageStatsManager} subsystem.
+     */
+    private final UsageStatsCache mUsageStats;
+
+    /**
+     * The number of icons released by {@link #trimMemory(int, int, int)}, per trim tier.
+     */
+    private final int[] mTrimmedIcons = new int[TRIM_TIER_NAMES.length];
+
+    /**
+     * The number of times {@link #trimMemory(int, int, int)} was called, per trim tier.
+     */
+    private final int[] mTrims = new int[TRIM_TIER_NAMES.length];
+
+    /**
+     * The settings views are bound with, read once and replaced by
+     * {@link #updateDisplayConfig(Context)}.
+     */
+    private volatile DisplayConfig mDisplayConfig;
 
     /**
      * The resource indicating what views to inflate to display the content of this
@@ -133,6 +193,11 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
      */
     private int mDropDownResource;
 
+    /**
+     * The token of the text metrics the label layouts were last prefetched for.
+     */
+    private Object mLabelMetrics;
+
     /**
      * Indicates whether or not {@link #notifyDataSetChanged()} must be called whenever
      * {@link #mObjects} is modified.
@@ -161,30 +226,15 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
                 new SimpleTaskConsumerManager(getOptimalNumberOfThreads(res), 300);
         mImageTasks = new ImageLoadingTask.Factory(mIconSizePixels);
         mPrefs = new LaunchableActivityPrefs(context);
+        mJournal = new LaunchJournal(context);
         mSearch = webSearch;
-        mUsageMap = new HashMap<>(0);
-        mUsageMap.putAll(getUsageStats(context));
-    }
-
-    /**
-     * This constructor is for reloading this Adapter using the {@link #export()} method.
-     *
-     * @param object   The Object from the {@code export()} method.
-     * @param context  The current activity.
-     * @param resource The resource ID for a layout file containing a TextView to use when
-     *                 instantiating views.
-     */
-    @SuppressWarnings("unchecked")
-    public LaunchableAdapter(final T webSearchLaunchable,
-                             final Object object, @NonNull final Context context,
-                             @LayoutRes final int resource) {
-        this(webSearchLaunchable, context, resource, ((List<? extends T>[]) object)[0].size());
+        mUsageStats = new UsageStatsCache(context);
+        mDisplayConfig = new DisplayConfig(new SharedLauncherPrefs(context));
 
-        final List<? extends T>[] lists = (List<? extends T>[]) object;
-        mObjects.addAll(lists[0]);
-
-        if (lists[1] != null) {
-            mOriginalValues = (List<T>) lists[1];
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            mLabelLayouts = new LabelLayoutCache();
+        } else {
+            mLabelLayouts = null;
         }
     }
 
@@ -203,31 +253,6 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
         return numThreads;
     }
 
-    /**
-     * This method returns a map of UsageStats for all enabled applications, if available.
-     *
-     * @param context The context to get the {@link UsageStatsManager} system service with.
-     * @return A Map containing the PackageName as the key and the UsageStats as the value for
-     * each individual package, if available. And empty map will be returned if not available for
-     * whatever reason. To mutate this map would result in a critical error.
-     */
-    @TargetApi(Build.VERSION_CODES.LOLLIPOP_MR1)
-    private static Map<String, UsageStats> getUsageStats(final Context context) {
-        Map<String, UsageStats> map = Collections.emptyMap();
-
-        if (Build.VERSION.SDK_INT > Build.VERSION_CODES.LOLLIPOP) {
-            try {
-                final UsageStatsManager statsManager =
-                        (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
-                map = statsManager.queryAndAggregateUsageStats(0L, System.currentTimeMillis());
-            } catch (final RuntimeException e) {
-                Log.v(TAG, "UsageStatsManager not supported.", e);
-            }
-        }
-
-        return map;
-    }
-
     /**
      * Adds the specified object at the end of the array.
      *
@@ -318,93 +343,134 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
         }
     }
 
-    public void clearCaches() {
-        for (final LaunchableActivity activity : mObjects) {
-            activity.deleteActivityIcon();
+    /**
+     * This method releases memory according to a trim level, from least to most disruptive:
+     * <ul>
+     * <li>At {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_MODERATE} and
+     * {@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN}, the search index and the icons of
+     * launchables hidden by the current search are released.</li>
+     * <li>At {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW},
+     * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL},
+     * {@link ComponentCallbacks2#TRIM_MEMORY_BACKGROUND} and
+     * {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE}, every icon which is not on screen and
+     * the label layouts are released as well.</li>
+     * <li>At {@link ComponentCallbacks2#TRIM_MEMORY_COMPLETE}, every icon is released.</li>
+     * </ul>
+     * What each tier released is counted, and logged in debug builds.
+     *
+     * @param level        The trim level, as passed to
+     *                     {@link ComponentCallbacks2#onTrimMemory(int)}.
+     * @param firstVisible The position of the first launchable on screen.
+     * @param lastVisible  The position of the last launchable on screen.
+     */
+    public void trimMemory(final int level, final int firstVisible, final int lastVisible) {
+        final int tier;
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            tier = TRIM_ALL;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND ||
+                level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW ||
+                level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            tier = TRIM_OFF_SCREEN;
+        } else {
+            tier = TRIM_HIDDEN;
+        }
+
+        final Set<LaunchableActivity> kept =
+                Collections.newSetFromMap(new IdentityHashMap<LaunchableActivity, Boolean>());
+        int released = 0;
+
+        synchronized (mLock) {
+            if (tier == TRIM_HIDDEN) {
+                kept.addAll(mObjects);
+            } else if (tier == TRIM_OFF_SCREEN) {
+                final int last = Math.min(lastVisible, mObjects.size() - 1);
+
+                for (int i = Math.max(firstVisible, 0); i <= last; i++) {
+                    kept.add(mObjects.get(i));
+                }
+            }
+
+            released += releaseIcons(mObjects, kept);
+            if (mOriginalValues != null) {
+                released += releaseIcons(mOriginalValues, kept);
+            }
+        }
+
+        mFilter.releaseIndex();
+        if (tier != TRIM_HIDDEN && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            mLabelLayouts.clear();
         }
 
-        if (mOriginalValues != null) {
-            for (final LaunchableActivity activity : mOriginalValues) {
-                activity.deleteActivityIcon();
+        mTrims[tier]++;
+        mTrimmedIcons[tier] += released;
+
+        if (BuildConfig.DEBUG) {
+            final StringBuilder totals = new StringBuilder();
+            for (int i = 0; i < TRIM_TIER_NAMES.length; i++) {
+                if (i > 0) {
+                    totals.append(", ");
+                }
+                totals.append(TRIM_TIER_NAMES[i]).append(": ").append(mTrimmedIcons[i])
+                        .append(" icons in ").append(mTrims[i]).append(" trims");
             }
+
+            Log.d(TAG, "Trim level " + level + " released " + released + " icons (" +
+                    TRIM_TIER_NAMES[tier] + "), totals " + totals + '.');
         }
     }
 
     /**
-     * The Object from this method is for use with
-     * {@link Activity#onRetainNonConfigurationInstance()} and
-     * {@link LaunchableAdapter#LaunchableAdapter(Object, Context, int)}.
+     * This method releases the icons of launchables.
      *
-     * @return An object used to restore the state of this Adapter.
+     * @param launchables The launchables to release the icons of.
+     * @param kept        The launchables to keep the icons of.
+     * @return The number of icons released.
      */
-    public Object export() {
-        return new List<?>[]{mObjects, mOriginalValues};
+    private static int releaseIcons(final Iterable<? extends LaunchableActivity> launchables,
+                                    final Set<LaunchableActivity> kept) {
+        int released = 0;
+
+        for (final LaunchableActivity launchable : launchables) {
+            if (launchable.isIconLoaded() && !kept.contains(launchable)) {
+                launchable.deleteActivityIcon();
+                released++;
+            }
+        }
+
+        return released;
     }
 
     /**
-     * This method returns the actual time an activity was used, if available.
+     * This method returns a copy of all {@link LaunchableActivity} objects in this adapter, in
+     * their current order, regardless of the current {@link Filter}.
      *
-     * @param activity The activity to return the last usage for.
-     * @return The last time this LaunchableActivity was used according to the Android usage
-     * system, -1L if not available for whatever reason.
+     * @return A copy of all launchables in this adapter.
      */
-    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    private long getActualLastUsed(final LaunchableActivity activity) {
-        final String packageName = activity.getComponent().getPackageName();
-        final long lastUsed;
+    @NonNull
+    public List<T> copyLaunchables() {
+        final List<T> copy;
 
-        if (mUsageMap.containsKey(packageName)) {
-            lastUsed = mUsageMap.get(packageName).getLastTimeUsed();
-        } else {
-            if (mUsageMap.isEmpty()) {
-                lastUsed = -1L;
+        synchronized (mLock) {
+            if (mOriginalValues == null) {
+                copy = new ArrayList<>(mObjects);
             } else {
-                lastUsed = 0L;
+                copy = new ArrayList<>(mOriginalValues);
             }
         }
 
-        return lastUsed;
+        return copy;
     }
 
     /**
-     * Returns the position of a {@link LaunchableActivity} where the
-     * {@link LaunchableActivity#getComponent()}.{@link ComponentName#getClassName()} is equal to
-     * the {@code className} parameter.
+     * This method returns the actual time an activity was used, if available.
      *
-     * @param className The classname to find.
-     * @return The LaunchableActivity matching the classname parameter, {@code -1} if not found.
+     * @param activity The activity to return the last usage for.
+     * @return The last time this LaunchableActivity was used according to the Android usage
+     * system, -1L if not available for whatever reason.
      */
-    public int getClassNamePosition(@NonNull final String className) {
-        final List<T> current;
-        int position = -1;
-
-        if (mOriginalValues == null) {
-            current = mObjects;
-        } else {
-            current = mOriginalValues;
-        }
-
-        final int currentSize = current.size();
-        for (int i = 0; i < currentSize && position == -1; i++) {
-            final String componentName = current.get(i).getComponent().getClassName();
-            final int firstIndex = componentName.indexOf('.');
-            final int lastIndex = componentName.lastIndexOf('.');
-
-            // The component classname is actually the ActivityName which will likely be longer
-            // than the classname. Make sure the activity name is somewhat valid before attempting
-            // to match with the beginning.
-            if (firstIndex == -1 || lastIndex == -1 || firstIndex == lastIndex) {
-                if (componentName.equals(className)) {
-                    position = i;
-                }
-            } else {
-                if (componentName.startsWith(className)) {
-                    position = i;
-                }
-            }
-        }
-
-        return position;
+    private long getActualLastUsed(final LaunchableActivity activity) {
+        return mUsageStats.getLastTimeUsed(activity);
     }
 
     @Override
@@ -463,42 +529,14 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
     }
 
     /**
-     * This returns the position given.
+     * This returns the stable identifier of the {@link LaunchableActivity} at a position.
      *
-     * @param position The position given.
-     * @return The position from the {@code position} argument.
+     * @param position The position of the item.
+     * @return The {@link LaunchableActivity#getStableId()} of the item.
      */
     @Override
     public long getItemId(final int position) {
-        return position;
-    }
-
-    /**
-     * Returns the position of a {@link LaunchableActivity} where the
-     * {@link LaunchableActivity#getComponent()}.{@link ComponentName#getPackageName()} is
-     * equal to the {@code className} parameter.
-     *
-     * @param packageName The package name to find in this adapter.
-     * @return The LaunchableActivity matching the classname parameter, {@code -1} if not found.
-     */
-    public int getPackageNamePosition(@NonNull final String packageName) {
-        final List<T> current;
-        int position = -1;
-
-        if (mOriginalValues == null) {
-            current = mObjects;
-        } else {
-            current = mOriginalValues;
-        }
-
-        final int currentSize = current.size();
-        for (int i = 0; i < currentSize && position == -1; i++) {
-            if (current.get(i).getComponent().getPackageName().equals(packageName)) {
-                position = i;
-            }
-        }
-
-        return position;
+        return getItem(position).getStableId();
     }
 
     /**
@@ -507,22 +545,8 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
      * @param activity The LaunchableActivity to retrieve the usage time for.
      * @return The usage time in milliseconds, -1L if not available for whatever reason.
      */
-    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     private long getUsageTime(final LaunchableActivity activity) {
-        final String packageName = activity.getComponent().getPackageName();
-        final long actualUsage;
-
-        if (mUsageMap.containsKey(packageName)) {
-            actualUsage = mUsageMap.get(packageName).getTotalTimeInForeground();
-        } else {
-            if (mUsageMap.isEmpty()) {
-                actualUsage = -1L;
-            } else {
-                actualUsage = 0L;
-            }
-        }
-
-        return actualUsage;
+        return mUsageStats.getTotalTimeInForeground(activity);
     }
 
     /**
@@ -539,13 +563,21 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
     public View getView(final int position, final View convertView,
                         @NonNull final ViewGroup parent) {
         final View view;
+        final ViewHolder holder;
 
         if (convertView == null) {
             final LayoutInflater inflater = LayoutInflater.from(parent.getContext());
 
             view = inflater.inflate(R.layout.app_grid_item, parent, false);
+            holder = new ViewHolder(view);
+            view.setTag(holder);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                view.addOnAttachStateChangeListener(new LabelMetricsListener(holder));
+            }
         } else {
             view = convertView;
+            holder = (ViewHolder) view.getTag();
         }
 
         view.setVisibility(View.VISIBLE);
@@ -553,34 +585,65 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
         synchronized (mLock) {
             launchableActivity = getItem(position);
         }
-        final CharSequence label = launchableActivity.toString();
-        final TextView appLabelView = view.findViewById(R.id.appLabel);
-        final ImageView appIconView = view.findViewById(R.id.appIcon);
-        final View appPinToTop = view.findViewById(R.id.appPinToTop);
 
-        appLabelView.setText(label);
+        final DisplayConfig config = mDisplayConfig;
+        final String label = launchableActivity.toString();
+        final boolean iconLoaded = launchableActivity.isIconLoaded();
+        final int priority = launchableActivity.getPriority();
 
-        appIconView.setTag(launchableActivity);
-        if (launchableActivity.isIconLoaded()) {
-            appIconView.setImageDrawable(
-                    launchableActivity.getActivityIcon(parent.getContext(), mIconSizePixels));
-        } else {
-            final SharedLauncherPrefs prefs = new SharedLauncherPrefs(parent.getContext());
-            if (prefs.areIconsEnabled()) {
-                mImageLoadingConsumersManager.addTask(mImageTasks.create(appIconView,
+        // Views are rebound for every data set change, skip those which would not change.
+        if (!holder.isBound(launchableActivity, label, iconLoaded, priority, config)) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                bindLabel(holder, label);
+            } else {
+                holder.mLabel.setText(label);
+            }
+
+            holder.mIcon.setTag(launchableActivity);
+            if (iconLoaded) {
+                holder.mIcon.setImageDrawable(
+                        launchableActivity.getActivityIcon(parent.getContext(), mIconSizePixels));
+            } else if (config.mIconsEnabled) {
+                mImageLoadingConsumersManager.addTask(mImageTasks.create(holder.mIcon,
                         launchableActivity));
             }
-        }
 
-        if (launchableActivity.getPriority() > 0) {
-            appPinToTop.setVisibility(View.VISIBLE);
-        } else {
-            appPinToTop.setVisibility(View.GONE);
+            if (priority > 0) {
+                holder.mPinToTop.setVisibility(View.VISIBLE);
+            } else {
+                holder.mPinToTop.setVisibility(View.GONE);
+            }
+
+            holder.setBound(launchableActivity, label, iconLoaded, priority, config);
         }
 
         return view;
     }
 
+    /**
+     * This method binds a label with its measured layout. The {@link LabelLayoutCache} only
+     * returns a layout measured with the text metrics the token of the view stands for, so the
+     * metrics are not compared again.
+     *
+     * @param holder The views to bind the label to.
+     * @param label  The label to bind.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.P)
+    private void bindLabel(final ViewHolder holder, final String label) {
+        holder.mLabel.setText(mLabelLayouts.get(label, holder.mLabelMetrics));
+    }
+
+    /**
+     * Item identifiers are derived from the component and user of each item, and do not change
+     * as items are sorted, filtered, added or removed.
+     *
+     * @return {@code true}
+     */
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
     /**
      * Inserts the specified object at the specified index in the array.
      *
@@ -614,192 +677,577 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
     }
 
     /**
-     * This method should be called before the parent context is destroyed.
+     * This method loads the launch journal scores used for frecency ordering into memory. This
+     * method performs I/O, and is expected to be called once, from a background thread.
+     */
+    public void loadScores() {
+        mJournal.loadScores();
+    }
+
+    /**
+     * This method loads the persistent information and the statistics used for sorting for
+     * launchables which are about to be added to this adapter. This method performs I/O and may
+     * be called from any thread.
+     *
+     * @param launchables The launchables to load the persistent information for.
+     * @param context     The current context.
      */
-    public void onStop() {
-        mPrefs.close();
+    public void hydrate(@NonNull final Iterable<? extends T> launchables,
+                        @NonNull final Context context) {
+        final SharedLauncherPrefs prefs = new SharedLauncherPrefs(context);
 
-        if (mImageLoadingConsumersManager != null) {
-            mImageLoadingConsumersManager.destroyAllConsumers(false);
+        for (final T launchable : launchables) {
+            mPrefs.setPreferences(launchable);
+        }
+
+        if (!prefs.isOrderedByAlphabetical()) {
+            updateSortStats(launchables, prefs);
         }
     }
 
-    public boolean remove(final int index) {
-        final List<T> current;
-        final T result;
+    /**
+     * This method inserts launchables into their sorted position in this adapter. Launchables
+     * which are already in this adapter are skipped.
+     *
+     * @param launchables The launchables to insert, hydrated by
+     *                    {@link #hydrate(Iterable, Context)}.
+     * @param context     The current context.
+     * @return {@code true} if this adapter was modified, {@code false} otherwise.
+     */
+    public boolean merge(@NonNull final Collection<? extends T> launchables,
+                         @NonNull final Context context) {
+        final Comparator<LaunchableActivity> order = getOrder(new SharedLauncherPrefs(context));
+        boolean modified = false;
 
         synchronized (mLock) {
+            final List<T> current;
+
             if (mOriginalValues == null) {
                 current = mObjects;
             } else {
                 current = mOriginalValues;
             }
 
-            result = current.remove(index);
+            final Collection<String> keys = new HashSet<>(current.size());
+            for (final T launchable : current) {
+                keys.add(launchable.getKey());
+            }
+
+            for (final T launchable : launchables) {
+                if (keys.add(launchable.getKey())) {
+                    final int index = Collections.binarySearch(current, launchable, order);
+
+                    if (index < 0) {
+                        current.add(-index - 1, launchable);
+                    } else {
+                        current.add(index, launchable);
+                    }
+                    modified = true;
+                }
+            }
         }
 
-        if (mNotifyOnChange) {
+        if (modified && mNotifyOnChange) {
             notifyDataSetChanged();
         }
 
-        return result != null;
+        return modified;
     }
 
     /**
-     * Removes the specified object from the array.
+     * This method reconciles this adapter with a freshly enumerated catalog.
+     * <p>
+     * Launchables which exist in both are kept, along with their icons and statistics, unless the
+     * label changed. Launchables which only exist in this adapter are removed, and launchables
+     * which only exist in the {@code catalog} are added.
      *
-     * @param object The object to remove.
+     * @param catalog     The freshly enumerated catalog, with persistent information already
+     *                    loaded by {@link #hydrate(Iterable, Context)}.
+     * @param userSerials The user serials of the profiles the catalog was enumerated for, null if
+     *                    every profile was enumerated. Launchables of other profiles are left
+     *                    untouched.
+     * @return {@code true} if this adapter was modified, {@code false} otherwise.
      */
-    public void remove(@Nullable final T object) {
+    public boolean reconcile(@NonNull final Collection<? extends T> catalog,
+                             @Nullable final Collection<Long> userSerials) {
+        final Map<String, T> fresh = new HashMap<>(catalog.size());
+        boolean modified = false;
+
+        for (final T launchable : catalog) {
+            fresh.put(launchable.getKey(), launchable);
+        }
+
         synchronized (mLock) {
+            final List<T> current;
+
             if (mOriginalValues == null) {
-                mObjects.remove(object);
+                current = mObjects;
             } else {
-                mOriginalValues.remove(object);
+                current = mOriginalValues;
+            }
+
+            for (int i = current.size() - 1; i >= 0; i--) {
+                final T existing = current.get(i);
+
+                if (userSerials == null || userSerials.contains(existing.getUserSerial())) {
+                    final T replacement = fresh.remove(existing.getKey());
+
+                    if (replacement == null) {
+                        current.remove(i);
+                        modified = true;
+                    } else if (!replacement.toString().equals(existing.toString())) {
+                        current.set(i, replacement);
+                        modified = true;
+                    }
+                }
+            }
+
+            for (final T added : fresh.values()) {
+                current.add(added);
+                modified = true;
             }
         }
 
-        if (mNotifyOnChange) {
+        if (modified && mNotifyOnChange) {
             notifyDataSetChanged();
         }
+
+        return modified;
     }
 
     /**
-     * This method removes all items by name.
-     * <p>
-     * This method removes all items by name. This method has been made very specifically to meet
-     * the need of this Adapter.
-     * <p>
-     * This method will remove a package name if it has an equal {@code name} in this Adapter.
-     * <p>
-     * This method will remove a class name if it has a classname that starts with {@code name} in
-     * this adapter.
-     * <p>
-     * This complexity is required because some packages install multiple activities (see "A Photo
-     * Manager"
-     * <p>
-     * Some packages install activities with duplicate names (see Google Drive/Google Sheets).
-     * <p>
-     * This method should not be part of this class, but we rely on locking the collections during
-     * this critical method.
+     * This method reconciles the launchables of a single package and user with a fresh
+     * enumeration of the package.
      *
-     * @param name The name. See the description for more information.
-     * @return The number of packages removed by this method.
+     * @param packageName The package to reconcile.
+     * @param userSerial  The user serial of the package, {@code Long.MIN_VALUE} if unknown.
+     * @param launchables The fresh enumeration of the package, empty if the package was removed.
+     *                    Launchables not in this adapter should have been hydrated by
+     *                    {@link #hydrate(Iterable, Context)}.
+     * @param context     The current context.
+     * @return {@code true} if this adapter was modified, {@code false} otherwise.
+     * @see #reconcilePackage(List, String, long, Collection, Comparator)
      */
-    public int removeAllByName(@NonNull final String name) {
-        ComponentName component;
-        final List<T> current;
-        int removedCount = 0;
+    public boolean reconcilePackage(@NonNull final String packageName, final long userSerial,
+                                    @NonNull final Collection<? extends T> launchables,
+                                    @NonNull final Context context) {
+        final Comparator<LaunchableActivity> order = getOrder(context);
+        final boolean modified;
 
         synchronized (mLock) {
+            final List<T> current;
+
             if (mOriginalValues == null) {
                 current = mObjects;
             } else {
                 current = mOriginalValues;
             }
 
-            for (int i = current.size() - 1; i >= 0; i--) {
-                component = current.get(i).getComponent();
-
-                if (component.getClassName().startsWith(name)) {
-                    Log.d(TAG, "Removing " + name +
-                            " by starting with classname: " + component.getClassName());
-                    current.remove(i);
-                    removedCount++;
-                } else if (component.getPackageName().equals(name)) {
-                    Log.d(TAG, "Found position of " + name);
-                    current.remove(i);
-                    removedCount++;
-                }
-            }
+            modified = reconcilePackage(current, packageName, userSerial, launchables, order);
         }
 
-        if (mNotifyOnChange) {
+        if (modified && mNotifyOnChange) {
             notifyDataSetChanged();
         }
 
-        return removedCount;
-    }
-
-    /**
-     * <p>Sets the layout resource to create the drop down views.</p>
-     *
-     * @param resource the layout resource defining the drop down views
-     * @see #getDropDownView(int, View, ViewGroup)
-     */
-    public void setDropDownViewResource(@LayoutRes final int resource) {
-        mDropDownResource = resource;
+        return modified;
     }
 
     /**
-     * Control whether methods that change the list ({@link #add}, {@link #addAll(Collection)},
-     * {@link #addAll(LaunchableActivity[])} (Object[])}, {@link #insert}, {@link #remove},
-     * {@link #clear}, {@link #sort(Comparator)}) automatically call {@link #notifyDataSetChanged}.
-     * If set to false, caller must manually call notifyDataSetChanged() to have the changes
-     * reflected in the attached view.
+     * This method reconciles the launchables of a single package and user in a sorted list with
+     * a fresh enumeration of the package.
      * <p>
-     * The default is true, and calling notifyDataSetChanged()
-     * resets the flag to true.
+     * Launchables which exist in both are kept, along with their icons and statistics, unless the
+     * label changed, in which case they are replaced by the enumerated launchable with their
+     * statistics copied over. Launchables in the list are never modified, so a copy of the list
+     * may be reconciled while the original is displayed. Launchables which only exist in the list
+     * are removed, and launchables which only exist in the enumeration are inserted in order.
      *
-     * @param notifyOnChange if true, modifications to the list will
-     *                       automatically call {@link
-     *                       #notifyDataSetChanged}
+     * @param current     The sorted list to reconcile, such as a copy from
+     *                    {@link #copyLaunchables()}.
+     * @param packageName The package to reconcile.
+     * @param userSerial  The user serial of the package, {@code Long.MIN_VALUE} if unknown.
+     * @param launchables The fresh enumeration of the package, empty if the package was removed.
+     * @param order       The order the list is sorted in.
+     * @param <T>         The type of launchable in the list.
+     * @return {@code true} if the list was modified, {@code false} otherwise.
      */
-    public void setNotifyOnChange(final boolean notifyOnChange) {
-        mNotifyOnChange = notifyOnChange;
-    }
+    public static <T extends LaunchableActivity> boolean reconcilePackage(
+            @NonNull final List<T> current, @NonNull final String packageName,
+            final long userSerial, @NonNull final Collection<? extends T> launchables,
+            @NonNull final Comparator<LaunchableActivity> order) {
+        final Map<String, T> fresh = new HashMap<>(launchables.size());
+        boolean relabeled = false;
+        boolean modified = false;
+
+        for (final T launchable : launchables) {
+            fresh.put(launchable.getKey(), launchable);
+        }
 
-    /**
-     * Sorts the content of this adapter using the specified comparator.
-     *
-     * @param comparator The comparator used to sort the objects contained
-     *                   in this adapter.
-     */
-    public void sort(@NonNull final Comparator<? super T> comparator) {
-        synchronized (mLock) {
-            Collections.sort(mObjects, comparator);
-            if (mOriginalValues != null) {
-                Collections.sort(mOriginalValues, comparator);
+        for (int i = current.size() - 1; i >= 0; i--) {
+            final T existing = current.get(i);
+            final ComponentName component = existing.getComponent();
+
+            if (component != null && existing.getUserSerial() == userSerial &&
+                    packageName.equals(component.getPackageName())) {
+                final T replacement = fresh.remove(existing.getKey());
+
+                if (replacement == null) {
+                    current.remove(i);
+                    modified = true;
+                } else if (!replacement.toString().equals(existing.toString())) {
+                    replacement.copyStatistics(existing);
+                    current.set(i, replacement);
+                    relabeled = true;
+                }
             }
         }
 
-        if (mNotifyOnChange) {
-            notifyDataSetChanged();
+        if (relabeled) {
+            current.addAll(fresh.values());
+            Collections.sort(current, order);
+        } else {
+            for (final T added : fresh.values()) {
+                final int index = Collections.binarySearch(current, added, order);
+
+                if (index < 0) {
+                    current.add(-index - 1, added);
+                } else {
+                    current.add(index, added);
+                }
+            }
         }
+
+        return modified || relabeled || !fresh.isEmpty();
     }
 
     /**
-     * This method sorts all {@link LaunchableActivity} objects in this {@code Adapter}.
+     * This method replaces launchables in this adapter with relabeled copies.
+     *
+     * @param launchables The relabeled copies, hydrated by {@link #hydrate(Iterable, Context)}.
+     * @param context     The current context.
+     * @return {@code true} if this adapter was modified, {@code false} otherwise.
+     * @see #relabel(List, Collection, Comparator)
      */
-    public void sortApps(final Context context) {
+    public boolean relabel(@NonNull final Collection<? extends T> launchables,
+                           @NonNull final Context context) {
+        final Comparator<LaunchableActivity> order = getOrder(context);
+        final boolean modified;
+
+        synchronized (mLock) {
+            final List<T> current;
+
+            if (mOriginalValues == null) {
+                current = mObjects;
+            } else {
+                current = mOriginalValues;
+            }
+
+            modified = relabel(current, launchables, order);
+        }
+
+        if (modified && mNotifyOnChange) {
+            notifyDataSetChanged();
+        }
+
+        return modified;
+    }
+
+    /**
+     * This method replaces launchables in a sorted list with relabeled copies, such as those
+     * created once labels delivered as placeholders were loaded.
+     * <p>
+     * The copies take over the statistics of the launchables they replace. Launchables in the
+     * list are never modified, so a copy of the list may be relabeled while the original is
+     * displayed. Copies of launchables which are not in the list are ignored.
+     *
+     * @param current     The sorted list to relabel, such as a copy from
+     *                    {@link #copyLaunchables()}.
+     * @param launchables The relabeled copies.
+     * @param order       The order the list is sorted in.
+     * @param <T>         The type of launchable in the list.
+     * @return {@code true} if the list was modified, {@code false} otherwise.
+     */
+    public static <T extends LaunchableActivity> boolean relabel(
+            @NonNull final List<T> current, @NonNull final Collection<? extends T> launchables,
+            @NonNull final Comparator<LaunchableActivity> order) {
+        final Map<String, T> relabeled = new HashMap<>(launchables.size());
+        boolean modified = false;
+
+        for (final T launchable : launchables) {
+            relabeled.put(launchable.getKey(), launchable);
+        }
+
+        final int size = current.size();
+        for (int i = 0; i < size; i++) {
+            final T existing = current.get(i);
+            final T replacement = relabeled.get(existing.getKey());
+
+            if (replacement != null && !replacement.toString().equals(existing.toString())) {
+                replacement.copyStatistics(existing);
+                current.set(i, replacement);
+                modified = true;
+            }
+        }
+
+        if (modified) {
+            Collections.sort(current, order);
+        }
+
+        return modified;
+    }
+
+    /**
+     * This method replaces the content of this adapter with a list derived in the background,
+     * provided this adapter was not modified since the list was derived.
+     *
+     * @param base        The copy from {@link #copyLaunchables()} the replacement was derived
+     *                    from.
+     * @param replacement The launchables to replace the content of this adapter with.
+     * @return {@code true} if the content was replaced, {@code false} if this adapter was
+     * modified after {@code base} was copied.
+     */
+    public boolean swap(@NonNull final List<? extends T> base,
+                        @NonNull final List<? extends T> replacement) {
+        boolean unchanged;
+
+        synchronized (mLock) {
+            final List<T> current;
+
+            if (mOriginalValues == null) {
+                current = mObjects;
+            } else {
+                current = mOriginalValues;
+            }
+
+            final int size = current.size();
+            unchanged = size == base.size();
+            for (int i = 0; unchanged && i < size; i++) {
+                //noinspection ObjectEquality
+                unchanged = current.get(i) == base.get(i);
+            }
+
+            if (unchanged) {
+                current.clear();
+                current.addAll(replacement);
+            }
+        }
+
+        if (unchanged && mNotifyOnChange) {
+            notifyDataSetChanged();
+        }
+
+        return unchanged;
+    }
+
+    /**
+     * This method returns the keys of all launchables in this adapter.
+     *
+     * @return The {@link LaunchableActivity#getKey()} of every launchable in this adapter.
+     */
+    public Set<String> getKeys() {
+        final Set<String> keys;
+
+        synchronized (mLock) {
+            final List<T> current;
+
+            if (mOriginalValues == null) {
+                current = mObjects;
+            } else {
+                current = mOriginalValues;
+            }
+
+            keys = new HashSet<>(current.size());
+            for (final T launchable : current) {
+                keys.add(launchable.getKey());
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * This method persists a launch of a {@link LaunchableActivity}, writing its launch
+     * statistics and appending the launch to the launch journal.
+     * <p>
+     * This method performs disk I/O, and is expected to be called from a background thread.
+     *
+     * @param launchable The launchable which was launched, with its statistics already updated.
+     */
+    public void recordLaunch(@NonNull final LaunchableActivity launchable) {
+        mPrefs.writePreference(launchable);
+        mJournal.append(launchable);
+    }
+
+    /**
+     * This method returns the launchables most likely to be launched at the current time of day,
+     * from the launch journal.
+     * <p>
+     * This method performs disk I/O, and is expected to be called from a background thread.
+     *
+     * @param limit The maximum number of launchables to return.
+     * @return The launchables in this adapter most likely to be launched, most likely first.
+     */
+    @NonNull
+    public List<T> getLikelyLaunches(final int limit) {
+        final List<String> keys = mJournal.getLikely(limit);
+        final Map<String, T> launchables = new HashMap<>(keys.size());
+        final List<T> likely = new ArrayList<>(keys.size());
+
+        for (final T launchable : copyLaunchables()) {
+            final String key = launchable.getKey();
+
+            if (key != null && keys.contains(key)) {
+                launchables.put(key, launchable);
+            }
+        }
+
+        for (final String key : keys) {
+            final T launchable = launchables.get(key);
+
+            if (launchable != null) {
+                likely.add(launchable);
+            }
+        }
+
+        return likely;
+    }
+
+    /**
+     * This method loads the icons and measures the labels of launchables ahead of them being
+     * bound, so they are displayed fully rendered.
+     * <p>
+     * This method loads icons synchronously, and is expected to be called from a background
+     * thread.
+     *
+     * @param context     The current context.
+     * @param launchables The launchables to prefetch.
+     */
+    public void prefetch(@NonNull final Context context,
+                         @NonNull final Collection<? extends T> launchables) {
+        if (mDisplayConfig.mIconsEnabled) {
+            for (final T launchable : launchables) {
+                if (!launchable.isIconLoaded()) {
+                    launchable.getActivityIcon(context, mIconSizePixels);
+                }
+            }
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            mLabelLayouts.prefetch(launchables);
+        }
+    }
+
+    public boolean remove(final int index) {
+        final List<T> current;
+        final T result;
+
+        synchronized (mLock) {
+            if (mOriginalValues == null) {
+                current = mObjects;
+            } else {
+                current = mOriginalValues;
+            }
+
+            result = current.remove(index);
+        }
+
+        if (mNotifyOnChange) {
+            notifyDataSetChanged();
+        }
+
+        return result != null;
+    }
+
+    /**
+     * Removes the specified object from the array.
+     *
+     * @param object The object to remove.
+     */
+    public void remove(@Nullable final T object) {
+        synchronized (mLock) {
+            if (mOriginalValues == null) {
+                mObjects.remove(object);
+            } else {
+                mOriginalValues.remove(object);
+            }
+        }
+
+        if (mNotifyOnChange) {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * <p>Sets the layout resource to create the drop down views.</p>
+     *
+     * @param resource the layout resource defining the drop down views
+     * @see #getDropDownView(int, View, ViewGroup)
+     */
+    public void setDropDownViewResource(@LayoutRes final int resource) {
+        mDropDownResource = resource;
+    }
+
+    /**
+     * Control whether methods that change the list ({@link #add}, {@link #addAll(Collection)},
+     * {@link #addAll(LaunchableActivity[])} (Object[])}, {@link #insert}, {@link #remove},
+     * {@link #clear}, {@link #sort(Comparator)}) automatically call {@link #notifyDataSetChanged}.
+     * If set to false, caller must manually call notifyDataSetChanged() to have the changes
+     * reflected in the attached view.
+     * <p>
+     * The default is true, and calling notifyDataSetChanged()
+     * resets the flag to true.
+     *
+     * @param notifyOnChange if true, modifications to the list will
+     *                       automatically call {@link
+     *                       #notifyDataSetChanged}
+     */
+    public void setNotifyOnChange(final boolean notifyOnChange) {
+        mNotifyOnChange = notifyOnChange;
+    }
+
+    /**
+     * Sorts the content of this adapter using the specified comparator.
+     *
+     * @param comparator The comparator used to sort the objects contained
+     *                   in this adapter.
+     */
+    public void sort(@NonNull final Comparator<? super T> comparator) {
+        synchronized (mLock) {
+            Collections.sort(mObjects, comparator);
+            if (mOriginalValues != null) {
+                Collections.sort(mOriginalValues, comparator);
+            }
+        }
+
+        if (mNotifyOnChange) {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * This method sorts all {@link LaunchableActivity} objects in this {@code Adapter}.
+     */
+    public void sortApps(final Context context) {
         final SharedLauncherPrefs prefs = new SharedLauncherPrefs(context);
-        final Collection<T> launchables;
 
         if (!prefs.isOrderedByAlphabetical()) {
+            final Collection<T> launchables;
+
             if (mOriginalValues == null) {
                 launchables = mObjects;
             } else {
                 launchables = mOriginalValues;
             }
 
-            for (final T launchable : launchables) {
-                updateLaunchableStats(launchable);
-            }
+            updateSortStats(launchables, prefs);
         }
 
         synchronized (mLock) {
             final boolean notify = mNotifyOnChange;
             mNotifyOnChange = false;
 
-            sort(ALPHABETICAL);
-
-            if (prefs.isOrderedByRecent()) {
-                sort(RECENT);
-            } else if (prefs.isOrderedByUsage()) {
-                sort(USAGE);
-            }
-
-            sort(PIN_TO_TOP);
+            sort(getOrder(prefs));
 
             if (notify) {
                 notifyDataSetChanged();
@@ -825,6 +1273,81 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
         return toString;
     }
 
+    /**
+     * This method returns the order {@link #sortApps(Context)} sorts the launchables in.
+     *
+     * @param context The current context.
+     * @return The comparator for the preferred order, falling back to pinned first and then
+     * alphabetical order.
+     */
+    @NonNull
+    public static Comparator<LaunchableActivity> getOrder(@NonNull final Context context) {
+        return getOrder(new SharedLauncherPrefs(context));
+    }
+
+    /**
+     * This method returns the order {@link #sortApps(Context)} sorts the launchables in.
+     *
+     * @param prefs The preferences to get the preferred order from.
+     * @return The comparator for the preferred order, falling back to pinned first and then
+     * alphabetical order.
+     */
+    private static Comparator<LaunchableActivity> getOrder(final SharedLauncherPrefs prefs) {
+        final Comparator<LaunchableActivity> order;
+
+        if (prefs.isOrderedByRecent()) {
+            order = new ChainedOrder(PIN_TO_TOP, RECENT, ALPHABETICAL);
+        } else if (prefs.isOrderedByUsage()) {
+            order = new ChainedOrder(PIN_TO_TOP, USAGE, ALPHABETICAL);
+        } else if (prefs.isOrderedByFrecency()) {
+            order = new ChainedOrder(PIN_TO_TOP, FRECENCY, ALPHABETICAL);
+        } else {
+            order = new ChainedOrder(PIN_TO_TOP, ALPHABETICAL);
+        }
+
+        return order;
+    }
+
+    /**
+     * This method updates the statistics the preferred order depends upon.
+     *
+     * @param launchables The launchables to update.
+     * @param prefs       The preferences to get the preferred order from.
+     */
+    private void updateSortStats(final Iterable<? extends T> launchables,
+                                 final SharedLauncherPrefs prefs) {
+        final Map<String, Double> scores;
+
+        if (prefs.isOrderedByFrecency()) {
+            scores = mJournal.getScores();
+        } else {
+            scores = Collections.emptyMap();
+        }
+
+        for (final T launchable : launchables) {
+            updateLaunchableStats(launchable);
+            updateFrecency(launchable, scores);
+        }
+    }
+
+    /**
+     * This method updates a LaunchableActivity with the frecency score from the
+     * {@link LaunchJournal}.
+     *
+     * @param launchable The launchable to update.
+     * @param scores     The scores from {@link LaunchJournal#getScores()}.
+     */
+    private static void updateFrecency(final LaunchableActivity launchable,
+                                       final Map<String, Double> scores) {
+        final Double score = scores.get(launchable.getKey());
+
+        if (score == null) {
+            launchable.setFrecency(0.0);
+        } else {
+            launchable.setFrecency(score);
+        }
+    }
+
     /**
      * This method updates a LaunchableActivity with statistics from the Android
      * {@link UsageStatsManager} subsystem.
@@ -844,12 +1367,327 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
     }
 
     /**
-     * This method updates the Map from the {@link UsageStatsManager} subsystem.
+     * This method refreshes the statistics from the {@link UsageStatsManager} subsystem in the
+     * background. Only the statistics since the last refresh are queried. If the statistics
+     * changed the order of the launchables, they are sorted again.
+     *
+     * @param context The current context.
+     */
+    public void refreshUsageStats(@NonNull final Context context) {
+        final Context appContext = context.getApplicationContext();
+
+        mUsageStats.refresh(new UsageStatsCache.Callback() {
+            @Override
+            public void onUsageStatsChanged() {
+                resortIfChanged(appContext);
+            }
+        });
+    }
+
+    /**
+     * This method updates the sort statistics, and sorts the launchables only if they are no
+     * longer in order.
+     *
+     * @param context The current context.
+     */
+    private void resortIfChanged(final Context context) {
+        final SharedLauncherPrefs prefs = new SharedLauncherPrefs(context);
+
+        if (prefs.isOrderedByRecent() || prefs.isOrderedByUsage()) {
+            final Comparator<LaunchableActivity> order = getOrder(prefs);
+            final List<T> launchables;
+
+            synchronized (mLock) {
+                if (mOriginalValues == null) {
+                    launchables = mObjects;
+                } else {
+                    launchables = mOriginalValues;
+                }
+
+                for (final T launchable : launchables) {
+                    updateLaunchableStats(launchable);
+                }
+
+                if (!isSorted(launchables, order)) {
+                    final boolean notify = mNotifyOnChange;
+                    mNotifyOnChange = false;
+
+                    sort(order);
+
+                    if (notify) {
+                        notifyDataSetChanged();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method checks whether a list is in order.
+     *
+     * @param launchables The list to check.
+     * @param order       The order to check the list against.
+     * @return {@code true} if the list is in order, {@code false} otherwise.
+     */
+    private static boolean isSorted(final List<? extends LaunchableActivity> launchables,
+                                    final Comparator<LaunchableActivity> order) {
+        final int size = launchables.size();
+        boolean sorted = true;
+
+        for (int i = 1; sorted && i < size; i++) {
+            sorted = order.compare(launchables.get(i - 1), launchables.get(i)) <= 0;
+        }
+
+        return sorted;
+    }
+
+    /**
+     * This method reads the settings views are bound with again. It should be called when a
+     * setting which affects the display of launchables changed.
      *
-     * @param context The context to use to obtain the Map from the UsageStatsManager subsystem.
+     * @param context The current context.
      */
-    public void updateUsageMap(final Context context) {
-        mUsageMap.putAll(getUsageStats(context));
+    public void updateDisplayConfig(@NonNull final Context context) {
+        mDisplayConfig = new DisplayConfig(new SharedLauncherPrefs(context));
+    }
+
+    /**
+     * This class is an immutable snapshot of the settings views are bound with, so they are not
+     * read from the preferences for every view bound.
+     */
+    private static final class DisplayConfig {
+
+        private final boolean mIconsEnabled;
+
+        private DisplayConfig(final SharedLauncherPrefs prefs) {
+            mIconsEnabled = prefs.areIconsEnabled();
+        }
+    }
+
+    /**
+     * This class holds the child views of a launchable view, so they are only looked up once per
+     * inflated view, along with the state the views were last bound with.
+     */
+    private static final class ViewHolder {
+
+        private final ImageView mIcon;
+
+        private final TextView mLabel;
+
+        private final View mPinToTop;
+
+        private LaunchableActivity mBound;
+
+        private DisplayConfig mBoundConfig;
+
+        private boolean mBoundIconLoaded;
+
+        private String mBoundLabel;
+
+        private int mBoundPriority;
+
+        /**
+         * The token of the text metrics of {@link #mLabel}, from the {@link LabelLayoutCache},
+         * null until the view is first attached.
+         */
+        private Object mLabelMetrics;
+
+        private ViewHolder(final View view) {
+            mIcon = view.findViewById(R.id.appIcon);
+            mLabel = view.findViewById(R.id.appLabel);
+            mPinToTop = view.findViewById(R.id.appPinToTop);
+        }
+
+        /**
+         * This method returns whether the views already display a launchable in a given state.
+         *
+         * @return {@code true} if the views need not be bound again, {@code false} otherwise.
+         */
+        @SuppressWarnings({"ObjectEquality", "StringEquality"})
+        private boolean isBound(final LaunchableActivity launchable, final String label,
+                                final boolean iconLoaded, final int priority,
+                                final DisplayConfig config) {
+            return mBound == launchable && mBoundLabel == label &&
+                    mBoundIconLoaded == iconLoaded && mBoundPriority == priority &&
+                    mBoundConfig == config;
+        }
+
+        private void setBound(final LaunchableActivity launchable, final String label,
+                              final boolean iconLoaded, final int priority,
+                              final DisplayConfig config) {
+            mBound = launchable;
+            mBoundLabel = label;
+            mBoundIconLoaded = iconLoaded;
+            mBoundPriority = priority;
+            mBoundConfig = config;
+        }
+    }
+
+    /**
+     * This class holds filter results as the edits which turn the previously displayed
+     * launchables into the filtered launchables. The edits are computed on the filter thread, so
+     * only they need to be applied on the main thread, and a keystroke which does not change the
+     * results does not notify at all.
+     * <p>
+     * Both lists are filtered from the same ordered launchables, so the edits are found in a
+     * single pass, matching launchables by {@link LaunchableActivity#getStableId()}.
+     *
+     * @param <T> The type of the launchables.
+     */
+    @VisibleForTesting
+    static final class FilterDelta<T extends LaunchableActivity> {
+
+        /**
+         * The launchables displayed when filtering started.
+         */
+        private final List<T> mBase;
+
+        /**
+         * The positions in {@link #mValues} to insert, in ascending order.
+         */
+        private final int[] mInsertions;
+
+        private final int mInsertionCount;
+
+        /**
+         * The positions in {@link #mBase} to remove, in ascending order.
+         */
+        private final int[] mRemovals;
+
+        private final int mRemovalCount;
+
+        /**
+         * The filtered launchables.
+         */
+        private final List<T> mValues;
+
+        FilterDelta(final List<T> base, final List<T> values) {
+            final int baseSize = base.size();
+            final int size = values.size();
+            final Set<Long> ids = new HashSet<>(size);
+            final int[] removals = new int[baseSize];
+            final int[] insertions = new int[size];
+            int removalCount = 0;
+            int insertionCount = 0;
+            int i = 0;
+            int j = 0;
+
+            for (final T value : values) {
+                ids.add(value.getStableId());
+            }
+
+            while (i < baseSize && j < size) {
+                final T previous = base.get(i);
+
+                //noinspection ObjectEquality
+                if (previous == values.get(j)) {
+                    i++;
+                    j++;
+                } else if (ids.contains(previous.getStableId())) {
+                    insertions[insertionCount++] = j++;
+                } else {
+                    removals[removalCount++] = i++;
+                }
+            }
+
+            while (i < baseSize) {
+                removals[removalCount++] = i++;
+            }
+
+            while (j < size) {
+                insertions[insertionCount++] = j++;
+            }
+
+            mBase = base;
+            mValues = values;
+            mRemovals = removals;
+            mRemovalCount = removalCount;
+            mInsertions = insertions;
+            mInsertionCount = insertionCount;
+        }
+
+        /**
+         * This method returns whether a list still holds the launchables the edits were computed
+         * from.
+         *
+         * @param objects The list to check.
+         * @return {@code true} if the list is unchanged since filtering started.
+         */
+        private boolean isBase(final List<T> objects) {
+            final int size = mBase.size();
+            boolean unchanged = objects.size() == size;
+
+            for (int i = 0; unchanged && i < size; i++) {
+                //noinspection ObjectEquality
+                unchanged = objects.get(i) == mBase.get(i);
+            }
+
+            return unchanged;
+        }
+
+        /**
+         * This method applies the edits to a list. If the list changed since filtering started,
+         * its contents are replaced instead.
+         *
+         * @param objects The list to edit, holding the launchables displayed.
+         * @return {@code true} if the list was modified, {@code false} otherwise.
+         */
+        boolean apply(final List<T> objects) {
+            final boolean modified;
+
+            if (isBase(objects)) {
+                for (int i = mRemovalCount - 1; i >= 0; i--) {
+                    objects.remove(mRemovals[i]);
+                }
+
+                for (int i = 0; i < mInsertionCount; i++) {
+                    final int position = mInsertions[i];
+
+                    objects.add(position, mValues.get(position));
+                }
+
+                modified = mRemovalCount > 0 || mInsertionCount > 0;
+            } else {
+                objects.clear();
+                objects.addAll(mValues);
+                modified = true;
+            }
+
+            return modified;
+        }
+    }
+
+    /**
+     * This class takes the text metrics of a label once its view is attached, as the text and
+     * layout direction of the view are only resolved from its parent then.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.P)
+    private final class LabelMetricsListener implements View.OnAttachStateChangeListener {
+
+        private final ViewHolder mHolder;
+
+        private LabelMetricsListener(final ViewHolder holder) {
+            mHolder = holder;
+        }
+
+        @Override
+        public void onViewAttachedToWindow(final View v) {
+            if (mHolder.mLabelMetrics == null) {
+                mHolder.mLabelMetrics =
+                        mLabelLayouts.setParams(mHolder.mLabel.getTextMetricsParams());
+
+                //noinspection ObjectEquality
+                if (mHolder.mLabelMetrics != mLabelMetrics) {
+                    mLabelMetrics = mHolder.mLabelMetrics;
+                    mLabelLayouts.prefetch(copyLaunchables());
+                }
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(final View v) {
+            // The metrics are kept for the next attachment.
+        }
     }
 
     /**
@@ -859,9 +1697,20 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
      */
     private final class LaunchableFilter extends Filter {
 
+        /**
+         * The search index of the catalog, only used from the filter thread.
+         */
+        private volatile FilterIndex<T> mIndex = new FilterIndex<>();
+
+        /**
+         * This method releases the search index, it is rebuilt by the next search.
+         */
+        private void releaseIndex() {
+            mIndex = new FilterIndex<>();
+        }
+
         @Override
         protected FilterResults performFiltering(final CharSequence constraint) {
-            final List<T> values;
             final FilterResults results = new FilterResults();
 
             // Don't act upon a blank constraint if the filter hasn't been used yet.
@@ -875,33 +1724,32 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
                     }
                 }
 
+                final FilterIndex<T> index = mIndex;
                 synchronized (mLock) {
-                    values = new ArrayList<>(mOriginalValues);
+                    index.update(mOriginalValues);
                 }
-                final int count = values.size();
+
+                final List<T> filtered = new ArrayList<>();
                 if (constraint == null || constraint.length() == 0) {
-                    results.values = values;
-                    results.count = count;
+                    index.copyTo(filtered);
                 } else {
                     final String prefixString = stripAccents(constraint).toLowerCase();
-                    final Collection<T> newValues = new ArrayList<>();
 
                     if (!prefixString.isEmpty()) {
                         mSearch.getLaunchIntent().putExtra(SearchManager.QUERY, prefixString);
-                        newValues.add(mSearch);
+                        filtered.add(mSearch);
                     }
 
-                    for (int i = 0; i < count; i++) {
-                        final T value = values.get(i);
-
-                        if (value.toString().toLowerCase().contains(prefixString)) {
-                            newValues.add(value);
-                        }
-                    }
+                    index.filter(prefixString, filtered);
+                }
 
-                    results.values = newValues;
-                    results.count = newValues.size();
+                final List<T> base;
+                synchronized (mLock) {
+                    base = new ArrayList<>(mObjects);
                 }
+
+                results.values = new FilterDelta<>(base, filtered);
+                results.count = filtered.size();
             }
 
             return results;
@@ -911,14 +1759,18 @@ public class LaunchableAdapter<T extends LaunchableActivity> extends BaseAdapter
         protected void publishResults(final CharSequence constraint, final FilterResults results) {
             //noinspection ObjectEquality
             if (mObjects != results.values) {
-                mObjects.clear();
                 //noinspection unchecked
-                mObjects.addAll((Collection<T>) results.values);
+                final FilterDelta<T> delta = (FilterDelta<T>) results.values;
+                final boolean changed;
 
-                if (results.count > 0) {
-                    notifyDataSetChanged();
-                } else {
+                synchronized (mLock) {
+                    changed = delta.apply(mObjects);
+                }
+
+                if (results.count == 0) {
                     notifyDataSetInvalidated();
+                } else if (changed) {
+                    notifyDataSetChanged();
                 }
             }
         }
@@ -71,8 +71,9 @@ public class SharedLauncherPrefs {
      * This method returns the order launchables should be ordered in.
      *
      * @return The value of {@link R.string#pref_app_preferred_order_entries_alphabetical},
-     * {@link R.string#pref_app_preferred_order_entries_recent} or
-     * {@link R.string#pref_app_preferred_order_entries_usages}.
+     * {@link R.string#pref_app_preferred_order_entries_recent},
+     * {@link R.string#pref_app_preferred_order_entries_usages} or
+     * {@link R.string#pref_app_preferred_order_entries_frecency}.
      * @see #getDefaultLauncherOrder()
      */
     private String getLauncherOrder() {
@@ -133,7 +134,18 @@ public class SharedLauncherPrefs {
      * @return {@code true} if launchables should be in alphabetical order, false otherwise.
      */
     public boolean isOrderedByAlphabetical() {
-        return !(isOrderedByRecent() || isOrderedByUsage());
+        return !(isOrderedByRecent() || isOrderedByUsage() || isOrderedByFrecency());
+    }
+
+    /**
+     * This method returns if the launchables should be ordered with
+     * {@link com.anpmech.launcher.comparators.FrecencyOrder}.
+     *
+     * @return {@code true} if launchables should be ordered by time decayed frequency of launch,
+     * {@code false} otherwise.
+     */
+    public boolean isOrderedByFrecency() {
+        return getLauncherOrder().equals(getString(R.string.pref_value_preferred_order_frecency));
     }
 
     /**
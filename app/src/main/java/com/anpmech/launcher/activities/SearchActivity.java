@@ -15,15 +15,12 @@
 
 package com.anpmech.launcher.activities;
 
-import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
-import android.content.pm.LauncherActivityInfo;
 import android.content.pm.LauncherApps;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
@@ -67,8 +64,6 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.DeprecatedSinceApi;
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import com.anpmech.launcher.BuildConfig;
@@ -77,33 +72,35 @@ import com.anpmech.launcher.LaunchableActivityPrefs;
 import com.anpmech.launcher.LaunchableAdapter;
 import com.anpmech.launcher.R;
 import com.anpmech.launcher.SharedLauncherPrefs;
-import com.anpmech.launcher.monitor.PackageChangeCallback;
-import com.anpmech.launcher.monitor.PackageChangedReceiver;
+import com.anpmech.launcher.catalog.CatalogRepository;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.Collection;
-import java.util.ListIterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This class is the main {@link Activity} for this launcher.
  */
 public class SearchActivity extends Activity
-        implements SharedPreferences.OnSharedPreferenceChangeListener, PackageChangeCallback {
+        implements SharedPreferences.OnSharedPreferenceChangeListener,
+        CatalogRepository.Listener {
 
-    private static final String SEARCH_EDIT_TEXT_KEY = "SearchEditText";
-
-    private static final String TAG = "SearchActivity";
     /**
-     * Synchronize to this lock when the Adapter is visible and might be called by multiple
-     * threads.
+     * The padding metrics computed for each display rotation and configuration, least recently
+     * used first.
      */
-    private final Object mLock = new Object();
+    private static final Map<PaddingMetrics.Key, PaddingMetrics> PADDING_METRICS =
+            new LinkedHashMap<PaddingMetrics.Key, PaddingMetrics>(8, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<PaddingMetrics.Key, PaddingMetrics> eldest) {
+                    return size() > PaddingMetrics.MAX_STATES;
+                }
+            };
 
-    /**
-     * This {@link BroadcastReceiver} implements an updater for package changes.
-     */
-    private final BroadcastReceiver mPackageChangeReceiver = new PackageChangedReceiver();
+    private static final String SEARCH_EDIT_TEXT_KEY = "SearchEditText";
 
+    private static final String TAG = "SearchActivity";
     /**
      * This implements a listener for orientation change, see {@link DisplayChangeListener} for
      * more information.
@@ -128,6 +125,16 @@ public class SearchActivity extends Activity
      */
     private LaunchableAdapter<LaunchableActivity> mAdapter;
 
+    /**
+     * The metrics the layout was last padded with.
+     */
+    private PaddingMetrics mPaddingMetrics;
+
+    /**
+     * The navigation bar height the layout was last padded with.
+     */
+    private int mPaddingNavigationBarHeight;
+
     private EditText mSearchEditText;
 
     /**
@@ -162,17 +169,6 @@ public class SearchActivity extends Activity
         return getLaunchableActivity(item.getMenuInfo());
     }
 
-    private static Collection<ResolveInfo> getLaunchableResolveInfos(final PackageManager pm,
-                                                                     @Nullable final String activityName) {
-        final Intent intent = new Intent();
-
-        intent.setAction(Intent.ACTION_MAIN);
-        intent.addCategory(Intent.CATEGORY_LAUNCHER);
-        intent.setPackage(activityName);
-
-        return pm.queryIntentActivities(intent, 0);
-    }
-
     /**
      * Retrieves the navigation bar height.
      *
@@ -259,56 +255,6 @@ public class SearchActivity extends Activity
         return getAppUsableScreenSizeWidth(display) < getRealScreenWidth(display);
     }
 
-    /**
-     * This method adds LauncherActivityInfo objects to an adapter in API 24+.
-     *
-     * @param adapter  The adapter to add to.
-     * @param infoList The objects to add to the adapter.
-     */
-    @TargetApi(Build.VERSION_CODES.N)
-    private void addToAdapter24(@NonNull final LaunchableAdapter<LaunchableActivity> adapter,
-                                @NonNull final Iterable<LauncherActivityInfo> infoList) {
-        final String thisCanonicalName = getClass().getCanonicalName();
-        final UserManager manager = (UserManager) getSystemService(Context.USER_SERVICE);
-        final boolean shouldLoadIcons = new SharedLauncherPrefs(this).areIconsEnabled();
-
-        for (final LauncherActivityInfo info : infoList) {
-            if (!thisCanonicalName.startsWith(info.getName())) {
-                adapter.add(new LaunchableActivity(info, manager, shouldLoadIcons));
-            }
-        }
-    }
-
-    /**
-     * This method adds ResolveInfo objects to an adapter in SDK 15-24, optionally using a
-     * readCache.
-     *
-     * @param adapter      The adapter to add ResolveInfo object to.
-     * @param infoList     The ResolveInfo object to add to the adapter.
-     * @param useReadCache Whether to use a read cache.
-     */
-    @DeprecatedSinceApi(api = Build.VERSION_CODES.N, message =
-            "Later APIs use addToAdapter(LaunchableActivity, Iterable<LauncherActivityInfo>)")
-    private void addToAdapter15(@NonNull final LaunchableAdapter<LaunchableActivity> adapter,
-                                @NonNull final Iterable<ResolveInfo> infoList,
-                                final boolean useReadCache) {
-        final SharedPreferences prefs = getPreferences(Context.MODE_PRIVATE);
-        final String thisCanonicalName = getClass().getCanonicalName();
-        final PackageManager manager;
-
-        if (useReadCache) {
-            manager = getPackageManager();
-        } else {
-            manager = null;
-        }
-
-        for (final ResolveInfo info : infoList) {
-            if (!thisCanonicalName.startsWith(info.activityInfo.packageName)) {
-                adapter.add(new LaunchableActivity(info, prefs, manager));
-            }
-        }
-    }
-
     private void hideKeyboard() {
         final View focus = getCurrentFocus();
 
@@ -334,8 +280,6 @@ public class SearchActivity extends Activity
     }
 
     private void launchActivity(final LaunchableActivity launchableActivity) {
-        final LaunchableActivityPrefs launchableprefs = new LaunchableActivityPrefs(this);
-
         hideKeyboard();
         // Second conditional is always true, but this shuts up warnings.
         if (launchableActivity.isUserKnown() &&
@@ -348,15 +292,12 @@ public class SearchActivity extends Activity
 
             launcher.startMainActivity(launchableActivity.getComponent(), userHandle,
                     null, Bundle.EMPTY);
+            CatalogRepository.getInstance(this).recordLaunch(launchableActivity);
         } else {
             try {
                 startActivity(launchableActivity.getLaunchIntent());
                 mSearchEditText.setText(null);
-                launchableActivity.setLaunchTime();
-                launchableActivity.addUsage();
-                launchableprefs.writePreference(launchableActivity);
-
-                mAdapter.sortApps(this);
+                CatalogRepository.getInstance(this).recordLaunch(launchableActivity);
             } catch (final ActivityNotFoundException e) {
                 if (BuildConfig.DEBUG) {
                     throw e;
@@ -394,62 +335,6 @@ public class SearchActivity extends Activity
         startActivity(intentPlayStore);
     }
 
-    /**
-     * Returns a web search {@link LaunchableActivity}.
-     *
-     * @return A web search {@link LaunchableActivity}.
-     */
-    private LaunchableActivity getWebLaunchable() {
-        final Intent intent = new Intent(Intent.ACTION_WEB_SEARCH);
-
-        return new LaunchableActivity(intent, getString(R.string.web_search), R.drawable.ic_baseline_search_24);
-    }
-
-    private LaunchableAdapter<LaunchableActivity> loadLaunchableAdapter() {
-        final LaunchableAdapter<LaunchableActivity> adapter;
-        final Object object = getLastNonConfigurationInstance();
-
-        if (object == null) {
-            final PackageManager pm = getPackageManager();
-            if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                final UserManager manager = (UserManager) getSystemService(Context.USER_SERVICE);
-                final LauncherApps launcherApps = (LauncherApps) getSystemService(Context.LAUNCHER_APPS_SERVICE);
-                final ListIterator<UserHandle> iter = manager.getUserProfiles().listIterator();
-                int count = 1; // Add the web launchable to the count
-
-                while (iter.hasNext()) {
-                    count += launcherApps.getActivityList(null, iter.next()).size();
-                }
-
-                adapter = new LaunchableAdapter<>(getWebLaunchable(), this, R.layout.app_grid_item, count);
-
-                while (iter.hasPrevious()) {
-                    addToAdapter24(adapter, launcherApps.getActivityList(null, iter.previous()));
-                }
-            } else {
-                final Collection<ResolveInfo> infoList = getLaunchableResolveInfos(pm, null);
-                final int infoListSize = infoList.size();
-
-                adapter = new LaunchableAdapter<>(getWebLaunchable(), this, R.layout.app_grid_item, infoListSize + 1);
-
-                addToAdapter15(adapter, infoList, true);
-            }
-            final SharedLauncherPrefs prefs = new SharedLauncherPrefs(this);
-
-            if (!prefs.isActionBarEnabled()) {
-                final Intent intent = new Intent(this, SettingsActivity.class);
-                adapter.add(new LaunchableActivity(intent, "Keikai Settings", R.drawable.ic_launcher));
-            }
-            adapter.sortApps(this);
-            adapter.notifyDataSetChanged();
-        } else {
-            adapter = new LaunchableAdapter<>(getWebLaunchable(), object, this, R.layout.app_grid_item);
-            adapter.setNotifyOnChange(true);
-        }
-
-        return adapter;
-    }
-
     @Override
     public void onBackPressed() {
         if (isCurrentLauncher()) {
@@ -459,6 +344,15 @@ public class SearchActivity extends Activity
         }
     }
 
+    /**
+     * Called when the {@link CatalogRepository} modified the catalog, the current search is
+     * applied to it again.
+     */
+    @Override
+    public void onCatalogChanged() {
+        updateFilter(mSearchEditText.getText());
+    }
+
     public void onClickClearButton(final View view) {
         mSearchEditText.setText("");
     }
@@ -504,6 +398,11 @@ public class SearchActivity extends Activity
     protected void onNewIntent(final Intent intent) {
         super.onNewIntent(intent);
 
+        // Home was requested, warm up the launchables likely to be launched from it.
+        if (Intent.ACTION_MAIN.equals(intent.getAction())) {
+            CatalogRepository.getInstance(this).predictLaunches();
+        }
+
         // If search has been typed, and home is hit, clear it.
         if (mSearchEditText.length() > 0) {
             mSearchEditText.setText(null);
@@ -521,64 +420,6 @@ public class SearchActivity extends Activity
         }
     }
 
-    /**
-     * Called when a package appears for any reason.
-     *
-     * @param activityName The name of the {@link Activity} of the package which appeared.
-     */
-    @Override
-    public void onPackageAppeared(final String activityName, int[] uids) {
-        final PackageManager pm = getPackageManager();
-
-        synchronized (mLock) {
-            if (mAdapter.getClassNamePosition(activityName) == -1) {
-
-                if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                    final LauncherApps launcherApps =
-                            (LauncherApps) getSystemService(Context.LAUNCHER_APPS_SERVICE);
-
-                    for (int uid : uids) {
-                        addToAdapter24(mAdapter, launcherApps.getActivityList(activityName,
-                                UserHandle.getUserHandleForUid(uid)));
-                    }
-                } else {
-                    final Iterable<ResolveInfo> resolveInfos =
-                            getLaunchableResolveInfos(pm, activityName);
-
-                    addToAdapter15(mAdapter, resolveInfos, false);
-                }
-                mAdapter.sortApps(this);
-                updateFilter(mSearchEditText.getText());
-            }
-        }
-    }
-
-    /**
-     * Called when a package disappears for any reason.
-     *
-     * @param activityName The name of the {@link Activity} of the package which disappeared.
-     */
-    @Override
-    public void onPackageDisappeared(final String activityName, int[] uids) {
-        synchronized (mLock) {
-            mAdapter.removeAllByName(activityName);
-            updateFilter(mSearchEditText.getText());
-        }
-    }
-
-    /**
-     * Called when an existing package is updated or its disabled state changes.
-     *
-     * @param activityName The name of the {@link Activity} of the package which was modified.
-     */
-    @Override
-    public void onPackageModified(final String activityName, int uid) {
-        synchronized (mLock) {
-            onPackageDisappeared(activityName, new int[]{uid});
-            onPackageAppeared(activityName, new int[]{uid});
-        }
-    }
-
     @Override
     protected void onPause() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
@@ -609,7 +450,7 @@ public class SearchActivity extends Activity
         super.onResume();
         final SharedLauncherPrefs prefs = new SharedLauncherPrefs(this);
 
-        mAdapter.updateUsageMap(this);
+        mAdapter.refreshUsageStats(this);
         final Editable searchText = mSearchEditText.getText();
 
         if ((prefs.isActionBarEnabled() && prefs.isKeyboardAutomatic()) ||
@@ -664,16 +505,6 @@ public class SearchActivity extends Activity
         }
     }
 
-    /**
-     * Retain the state of the adapter on configuration change.
-     *
-     * @return The attached {@link LaunchableAdapter}.
-     */
-    @Override
-    public Object onRetainNonConfigurationInstance() {
-        return mAdapter.export();
-    }
-
     @Override
     protected void onSaveInstanceState(final Bundle outState) {
         final String searchEdit = mSearchEditText.getText().toString();
@@ -695,6 +526,7 @@ public class SearchActivity extends Activity
         if (getString(R.string.pref_key_preferred_order).equals(key)) {
             mAdapter.sortApps(this);
         } else if (getString(R.string.pref_key_disable_icons).equals(key)) {
+            mAdapter.updateDisplayConfig(this);
             recreate();
         } else if (getString(R.string.pref_key_allow_rotation).equals(key)) {
             setRotation(new SharedLauncherPrefs(this));
@@ -710,15 +542,12 @@ public class SearchActivity extends Activity
         // In a perfect world, this all could happen in onCreate(), but there are problems
         // with BroadcastReceiver registration and unregistration with that scenario.
         mSearchEditText = findViewById(R.id.user_search_input);
-        mAdapter = loadLaunchableAdapter();
+        mAdapter = CatalogRepository.getInstance(this).attach(this);
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
             mDisplayListener = new DisplayChangeListener();
         }
 
-        registerReceiver(mPackageChangeReceiver, PackageChangedReceiver.getFilter());
-        PackageChangedReceiver.setCallback(this);
-
         setupPadding();
         setupPreferences();
         setupViews();
@@ -729,24 +558,27 @@ public class SearchActivity extends Activity
 
     @Override
     protected void onStop() {
-        mAdapter.onStop();
-        unregisterReceiver(mPackageChangeReceiver);
+        CatalogRepository.getInstance(this).detach(this);
 
         super.onStop();
     }
 
     /**
-     * This method clears the {@link LaunchableActivity} icons from memory on trim.
+     * This method releases {@link LaunchableActivity} icons and search state from memory on trim,
+     * more the higher the level, see {@link LaunchableAdapter#trimMemory(int, int, int)}.
      *
      * @param level The level of memory trim requested.
      */
     @Override
     public void onTrimMemory(final int level) {
         super.onTrimMemory(level);
-        if (level == TRIM_MEMORY_COMPLETE) {
-            mAdapter.clearCaches();
-        }
 
+        if (mAdapter != null) {
+            final GridView appContainer = findViewById(R.id.appsContainer);
+
+            mAdapter.trimMemory(level, appContainer.getFirstVisiblePosition(),
+                    appContainer.getLastVisiblePosition());
+        }
     }
 
     /**
@@ -765,6 +597,7 @@ public class SearchActivity extends Activity
         }
 
         prefs.writePreference(activity);
+        prefs.close();
         mAdapter.sortApps(this);
     }
 
@@ -791,59 +624,91 @@ public class SearchActivity extends Activity
         return insets.bottom;
     }
 
-    private static void setupMasterLayoutPadding(final View masterLayout, final int padding) {
-        masterLayout.setFitsSystemWindows(isNavBarProblematic(masterLayout.getContext()));
+    private static void setupMasterLayoutPadding(final View masterLayout,
+                                                  final PaddingMetrics metrics) {
+        masterLayout.setFitsSystemWindows(metrics.mNavBarProblematic);
         final FrameLayout.LayoutParams masterParams =
                 (FrameLayout.LayoutParams) masterLayout.getLayoutParams();
 
-        masterParams.setMargins(padding, 0, padding, 0);
+        masterParams.setMargins(metrics.mMargin, 0, metrics.mMargin, 0);
     }
 
-    private static int setupActionBarLayout(final View customActionBar, final int padding) {
-        final Context context = customActionBar.getContext();
+    private static int setupActionBarLayout(final View customActionBar,
+                                            final PaddingMetrics metrics) {
         final FrameLayout.LayoutParams searchParams =
                 (FrameLayout.LayoutParams) customActionBar.getLayoutParams();
-        final int searchTop;
+        final int searchTop = metrics.mStatusBarHeight + metrics.mMargin;
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && !isNavBarProblematic(context)) {
-            searchTop = getDimensionSize(context.getResources(), "status_bar_height") +
-                    padding;
-        } else {
-            searchTop = padding;
+        searchParams.setMargins(0, searchTop, 0, 0);
+
+        return searchTop + metrics.mIconSize + metrics.mMargin;
+    }
+
+    /**
+     * This method returns the metrics the layout is padded with for the current display rotation
+     * and configuration. They are only computed once for each distinct state.
+     *
+     * @return The metrics for the current display state.
+     */
+    private PaddingMetrics getPaddingMetrics() {
+        final int rotation = getWindowManager().getDefaultDisplay().getRotation();
+        final Configuration configuration = getResources().getConfiguration();
+        final PaddingMetrics.Key key = new PaddingMetrics.Key(rotation, configuration);
+        PaddingMetrics metrics;
+
+        synchronized (PADDING_METRICS) {
+            metrics = PADDING_METRICS.get(key);
         }
 
-        searchParams.setMargins(0, searchTop, 0, 0);
+        if (metrics == null) {
+            metrics = new PaddingMetrics(this);
 
-        return searchTop + context.getResources().getDimensionPixelSize(R.dimen.app_icon_size) + padding;
+            synchronized (PADDING_METRICS) {
+                PADDING_METRICS.put(new PaddingMetrics.Key(rotation,
+                        new Configuration(configuration)), metrics);
+            }
+        }
+
+        return metrics;
     }
 
     private void setupPadding() {
         final View appContainer = findViewById(R.id.appsContainer);
-        final int appContainerTop, appContainerBottom;
-        final int dp16 = getResources().getDimensionPixelSize(R.dimen.activity_horizontal_margin);
-        final boolean isNavBarProblematic = isNavBarProblematic(this);
-        setupMasterLayoutPadding(findViewById(R.id.masterLayout), dp16);
+        final PaddingMetrics metrics = getPaddingMetrics();
+        final int appContainerTop;
+        setupMasterLayoutPadding(findViewById(R.id.masterLayout), metrics);
 
         if (new SharedLauncherPrefs(this).isActionBarEnabled()) {
-            appContainerTop = setupActionBarLayout(findViewById(R.id.customActionBar), dp16);
+            appContainerTop = setupActionBarLayout(findViewById(R.id.customActionBar), metrics);
         } else {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && !isNavBarProblematic) {
-                appContainerTop = getDimensionSize(getResources(), "status_bar_height") +
-                        dp16;
-            } else {
-                appContainerTop = dp16;
-            }
+            appContainerTop = metrics.mStatusBarHeight + metrics.mMargin;
         }
 
+        final int navigationBarHeight = getNavigationBarHeight(metrics);
+        appContainer.setPadding(0, appContainerTop, 0, navigationBarHeight + metrics.mMargin);
+        mPaddingMetrics = metrics;
+        mPaddingNavigationBarHeight = navigationBarHeight;
+    }
+
+    /**
+     * This method returns the height of the navigation bar the layout must keep clear of.
+     * <p>
+     * From API 30 the height is taken from the current window insets, which are not available
+     * until the window is attached, so it is never cached.
+     *
+     * @param metrics The metrics for the current display state.
+     * @return The navigation bar height.
+     */
+    private int getNavigationBarHeight(final PaddingMetrics metrics) {
+        final int height;
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            appContainerBottom = getNavigationBarHeight30() + dp16;
-        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            appContainerBottom = getNavigationBarHeight15(getResources()) + dp16;
+            height = getNavigationBarHeight30();
         } else {
-            appContainerBottom = dp16;
+            height = metrics.mNavigationBarHeight;
         }
 
-        appContainer.setPadding(0, appContainerTop, 0, appContainerBottom);
+        return height;
     }
 
     private void setupPreferences() {
@@ -896,6 +761,102 @@ public class SearchActivity extends Activity
         }
     }
 
+    /**
+     * This class holds the values the layout is padded with, derived from resource lookups and
+     * the display size, for a single display rotation and configuration. Nothing derived from
+     * window insets is held, as they change without the display state changing.
+     */
+    private static final class PaddingMetrics {
+
+        /**
+         * The number of display states to keep the metrics of.
+         */
+        private static final int MAX_STATES = 4;
+
+        private final int mIconSize;
+
+        /**
+         * The margin around the layout.
+         */
+        private final int mMargin;
+
+        /**
+         * See {@link SearchActivity#isNavBarProblematic(Context)}.
+         */
+        private final boolean mNavBarProblematic;
+
+        /**
+         * The height of the navigation bar the layout must keep clear of, prior to API 30. See
+         * {@link SearchActivity#getNavigationBarHeight(PaddingMetrics)}.
+         */
+        private final int mNavigationBarHeight;
+
+        /**
+         * The height of the status bar the layout must keep clear of, {@code 0} if it is
+         * already laid out below it.
+         */
+        private final int mStatusBarHeight;
+
+        private PaddingMetrics(final SearchActivity activity) {
+            final Resources resources = activity.getResources();
+
+            mMargin = resources.getDimensionPixelSize(R.dimen.activity_horizontal_margin);
+            mIconSize = resources.getDimensionPixelSize(R.dimen.app_icon_size);
+            mNavBarProblematic = isNavBarProblematic(activity);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && !mNavBarProblematic) {
+                mStatusBarHeight = getDimensionSize(resources, "status_bar_height");
+            } else {
+                mStatusBarHeight = 0;
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT &&
+                    Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+                mNavigationBarHeight = getNavigationBarHeight15(resources);
+            } else {
+                mNavigationBarHeight = 0;
+            }
+        }
+
+        /**
+         * This class identifies a display state by rotation and configuration.
+         */
+        private static final class Key {
+
+            private final Configuration mConfiguration;
+
+            private final int mRotation;
+
+            private Key(final int rotation, final Configuration configuration) {
+                mRotation = rotation;
+                mConfiguration = configuration;
+            }
+
+            @Override
+            public boolean equals(final Object o) {
+                final boolean equals;
+
+                if (this == o) {
+                    equals = true;
+                } else if (o instanceof Key) {
+                    final Key key = (Key) o;
+
+                    equals = mRotation == key.mRotation &&
+                            mConfiguration.equals(key.mConfiguration);
+                } else {
+                    equals = false;
+                }
+
+                return equals;
+            }
+
+            @Override
+            public int hashCode() {
+                return 31 * mRotation + mConfiguration.hashCode();
+            }
+        }
+    }
+
     private final class AppContainerListener implements AbsListView.OnScrollListener,
             OnItemClickListener {
 
@@ -934,7 +895,13 @@ public class SearchActivity extends Activity
 
         @Override
         public void onDisplayChanged(final int displayId) {
-            setupPadding();
+            final PaddingMetrics metrics = getPaddingMetrics();
+
+            //noinspection ObjectEquality
+            if (metrics != mPaddingMetrics ||
+                    getNavigationBarHeight(metrics) != mPaddingNavigationBarHeight) {
+                setupPadding();
+            }
         }
 
         @Override
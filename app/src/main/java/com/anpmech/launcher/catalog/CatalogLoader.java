@@ -0,0 +1,661 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.catalog;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Build;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.Log;
+
+import androidx.annotation.DeprecatedSinceApi;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.anpmech.launcher.LaunchableActivity;
+import com.anpmech.launcher.SharedLauncherPrefs;
+import com.anpmech.launcher.activities.SearchActivity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class enumerates {@link LaunchableActivity} objects from the system.
+ * <p>
+ * Every method in this class performs binder calls and should not be called from the main
+ * thread.
+ */
+public class CatalogLoader {
+
+    /**
+     * The number of launchables delivered to a {@link Listener} at a time, roughly a screenful.
+     */
+    private static final int CHUNK_SIZE = 32;
+
+    /**
+     * The executor used to enumerate profiles in parallel. Idle threads expire, as enumeration
+     * happens rarely.
+     */
+    private static final ExecutorService PROFILE_EXECUTOR = Executors.newCachedThreadPool();
+
+    private static final String TAG = "CatalogLoader";
+
+    private final Context mContext;
+
+    /**
+     * The cache of labels for APIs 15-23.
+     */
+    private final LabelCache mLabelCache;
+
+    /**
+     * The canonical name of the launcher activity, which should not be enumerated.
+     */
+    private final String mLauncherName = SearchActivity.class.getCanonicalName();
+
+    /**
+     * The sole constructor.
+     *
+     * @param context The current context.
+     */
+    public CatalogLoader(@NonNull final Context context) {
+        mContext = context;
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            mLabelCache = new LabelCache(context);
+        } else {
+            mLabelCache = null;
+        }
+    }
+
+    /**
+     * This method returns the {@link ResolveInfo} objects for all launchable activities.
+     *
+     * @param pm          The PackageManager to query.
+     * @param packageName The package to restrict the query to, null to query all packages.
+     * @return The launchable activities.
+     */
+    private static Collection<ResolveInfo> getLaunchableResolveInfos(final PackageManager pm,
+                                                                     @Nullable final String packageName) {
+        final Intent intent = new Intent();
+
+        intent.setAction(Intent.ACTION_MAIN);
+        intent.addCategory(Intent.CATEGORY_LAUNCHER);
+        intent.setPackage(packageName);
+
+        return pm.queryIntentActivities(intent, 0);
+    }
+
+    /**
+     * This method creates LaunchableActivity objects from LauncherActivityInfo objects in API 24+.
+     *
+     * @param infoList The objects to create the launchables from.
+     * @param listener The listener to deliver the launchables to as they are created.
+     * @return The launchables created from the {@code infoList}.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private List<LaunchableActivity> createLaunchables24(
+            @NonNull final Collection<LauncherActivityInfo> infoList,
+            @Nullable final Listener listener) {
+        final UserManager manager = (UserManager) mContext.getSystemService(Context.USER_SERVICE);
+        final boolean shouldLoadIcons = new SharedLauncherPrefs(mContext).areIconsEnabled();
+        final List<LaunchableActivity> launchables = new ArrayList<>(infoList.size());
+        int delivered = 0;
+
+        for (final LauncherActivityInfo info : infoList) {
+            if (!mLauncherName.startsWith(info.getName())) {
+                launchables.add(new LaunchableActivity(info, manager, shouldLoadIcons));
+                delivered = deliverChunk(launchables, delivered, listener, false);
+            }
+        }
+
+        deliverChunk(launchables, delivered, listener, true);
+
+        return launchables;
+    }
+
+    /**
+     * This method creates LaunchableActivity objects from ResolveInfo objects in SDK 15-23.
+     * <p>
+     * If {@code lazyLabels} is true, labels missing from the {@link LabelCache} are given a
+     * placeholder, and are loaded once every launchable has been delivered to the
+     * {@code listener}, which receives relabeled copies. Otherwise, every label is loaded from
+     * the system before this method returns.
+     *
+     * @param infoList   The ResolveInfo objects to create the launchables from.
+     * @param lazyLabels Whether to use the label cache and to load missing labels lazily.
+     * @param listener   The listener to deliver the launchables to as they are created.
+     * @return The launchables created from the {@code infoList}, with their loaded labels.
+     */
+    @DeprecatedSinceApi(api = Build.VERSION_CODES.N, message =
+            "Later APIs use createLaunchables24(Collection<LauncherActivityInfo>, Listener)")
+    private List<LaunchableActivity> createLaunchables15(
+            @NonNull final Collection<ResolveInfo> infoList, final boolean lazyLabels,
+            @Nullable final Listener listener) {
+        final PackageManager manager = mContext.getPackageManager();
+        final List<LaunchableActivity> launchables = new ArrayList<>(infoList.size());
+        final List<ResolveInfo> unresolvedInfos = new ArrayList<>();
+        final int[] unresolvedPositions = new int[infoList.size()];
+        int delivered = 0;
+
+        for (final ResolveInfo info : infoList) {
+            if (!mLauncherName.startsWith(info.activityInfo.packageName)) {
+                String label = null;
+
+                if (lazyLabels) {
+                    label = mLabelCache.get(info);
+                }
+
+                final LaunchableActivity launchable;
+                if (label == null && lazyLabels) {
+                    launchable = new LaunchableActivity(info, LabelCache.getPlaceholder(info));
+                    unresolvedPositions[unresolvedInfos.size()] = launchables.size();
+                    unresolvedInfos.add(info);
+                } else if (label == null) {
+                    label = info.loadLabel(manager).toString();
+                    mLabelCache.put(info, label);
+                    launchable = new LaunchableActivity(info, label);
+                } else {
+                    launchable = new LaunchableActivity(info, label);
+                }
+
+                launchables.add(launchable);
+                delivered = deliverChunk(launchables, delivered, listener, false);
+            }
+        }
+
+        deliverChunk(launchables, delivered, listener, true);
+
+        final int unresolvedCount = unresolvedInfos.size();
+        final List<LaunchableActivity> relabeled = new ArrayList<>(unresolvedCount);
+        for (int i = 0; i < unresolvedCount; i++) {
+            final ResolveInfo info = unresolvedInfos.get(i);
+            final String label = info.loadLabel(manager).toString();
+            final LaunchableActivity launchable = new LaunchableActivity(info, label);
+
+            // The delivered launchables may be displayed, so they are replaced, not relabeled.
+            launchables.set(unresolvedPositions[i], launchable);
+            relabeled.add(launchable);
+            mLabelCache.put(info, label);
+        }
+
+        mLabelCache.commit();
+
+        if (listener != null && unresolvedCount > 0) {
+            listener.onLabelsLoaded(relabeled);
+        }
+
+        return launchables;
+    }
+
+    /**
+     * This method delivers the launchables created since the last delivery to the listener, once
+     * enough have accumulated.
+     *
+     * @param launchables The launchables created so far.
+     * @param delivered   The number of launchables already delivered.
+     * @param listener    The listener to deliver to, if null, nothing is delivered.
+     * @param flush       Whether to deliver the remainder, regardless of size.
+     * @return The number of launchables delivered after this call.
+     */
+    private static int deliverChunk(final List<LaunchableActivity> launchables,
+                                    final int delivered, @Nullable final Listener listener,
+                                    final boolean flush) {
+        final int size = launchables.size();
+        int result = delivered;
+
+        if (listener != null && size > delivered && (flush || size - delivered >= CHUNK_SIZE)) {
+            listener.onLaunchablesLoaded(new ArrayList<>(launchables.subList(delivered, size)));
+            result = size;
+        }
+
+        return result;
+    }
+
+    /**
+     * This method creates the launchables of the requested profiles from an enumeration, without
+     * enumerating them again.
+     * <p>
+     * The launchables of all profiles but the first are created in parallel.
+     *
+     * @param enumeration The enumeration returned by {@link #enumerate()}.
+     * @param userSerials The user serials of the profiles to create the launchables of, as keyed
+     *                    by {@link Enumeration#getFingerprints()}, null for every profile.
+     * @param listener    If not null, the listener to deliver launchables to in chunks as they
+     *                    are created, before this method returns. This listener may be called
+     *                    from several threads at once.
+     * @return The launchables of the profiles, unsorted and without persistent information.
+     */
+    @NonNull
+    public List<LaunchableActivity> loadProfiles(@NonNull final Enumeration enumeration,
+                                                 @Nullable final Collection<Long> userSerials,
+                                                 @Nullable final Listener listener) {
+        final List<LaunchableActivity> launchables;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            final List<List<LauncherActivityInfo>> profiles = new ArrayList<>();
+
+            for (final Map.Entry<Long, List<LauncherActivityInfo>> entry :
+                    enumeration.mProfiles.entrySet()) {
+                if (userSerials == null || userSerials.contains(entry.getKey())) {
+                    profiles.add(entry.getValue());
+                }
+            }
+
+            final int profileCount = profiles.size();
+            final List<Future<List<LaunchableActivity>>> futures = new ArrayList<>(profileCount);
+
+            for (int i = 1; i < profileCount; i++) {
+                futures.add(PROFILE_EXECUTOR.submit(
+                        new ProfileCreation(profiles.get(i), listener)));
+            }
+
+            if (profileCount == 0) {
+                launchables = new ArrayList<>(0);
+            } else {
+                launchables = createLaunchables24(profiles.get(0), listener);
+            }
+
+            launchables.addAll(collect(futures));
+        } else if (userSerials == null || userSerials.contains(Long.MIN_VALUE)) {
+            launchables = createLaunchables15(enumeration.mResolveInfos, true, listener);
+        } else {
+            launchables = new ArrayList<>(0);
+        }
+
+        return launchables;
+    }
+
+    /**
+     * This method waits for parallel work on the profiles and collects the results.
+     *
+     * @param futures The pending results.
+     * @param <T>     The type of the collected results.
+     * @return The results which completed successfully, in order.
+     */
+    private static <T> List<T> collect(final Iterable<Future<List<T>>> futures) {
+        final List<T> results = new ArrayList<>();
+
+        for (final Future<List<T>> future : futures) {
+            try {
+                results.addAll(future.get());
+            } catch (final ExecutionException e) {
+                Log.e(TAG, "Failed to enumerate profile.", e);
+            } catch (final InterruptedException e) {
+                Log.e(TAG, "Profile enumeration was interrupted.", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * This method enumerates the launchable activities of every profile, and fingerprints the
+     * catalog of each.
+     * <p>
+     * This is the only enumeration of the launchable activities during a reconciliation, all
+     * profiles but the first are enumerated in parallel. No labels or icons are loaded; the
+     * launchables of the profiles whose fingerprint changed are created from this enumeration by
+     * {@link #loadProfiles(Enumeration, Collection, Listener)}.
+     * <p>
+     * The fingerprint covers the launchable components, the time their packages were last
+     * installed or updated, and the locale, which the labels depend on.
+     *
+     * @return The enumeration of the launchable activities.
+     */
+    @NonNull
+    public Enumeration enumerate() {
+        final Map<Long, Long> fingerprints = new HashMap<>();
+        final Map<Long, List<LauncherActivityInfo>> profiles = new LinkedHashMap<>();
+        Collection<ResolveInfo> resolveInfos = Collections.emptyList();
+
+        final Map<String, Long> updateTimes = new HashMap<>();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            final UserManager manager =
+                    (UserManager) mContext.getSystemService(Context.USER_SERVICE);
+            final List<UserHandle> users = manager.getUserProfiles();
+            final List<Future<List<LauncherActivityInfo>>> futures =
+                    new ArrayList<>(users.size());
+
+            for (int i = 1; i < users.size(); i++) {
+                futures.add(PROFILE_EXECUTOR.submit(new ProfileQuery(users.get(i))));
+            }
+
+            final List<List<LauncherActivityInfo>> infoLists = new ArrayList<>(users.size());
+            if (!users.isEmpty()) {
+                infoLists.add(new ProfileQuery(users.get(0)).call());
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                infoLists.add(getQueryResult(futures.get(i), users.get(i + 1)));
+            }
+
+            for (int i = 0; i < users.size(); i++) {
+                final List<LauncherActivityInfo> infoList = infoLists.get(i);
+                final long serial = manager.getSerialNumberForUser(users.get(i));
+
+                fingerprints.put(serial, getFingerprint24(infoList, updateTimes));
+                profiles.put(serial, infoList);
+            }
+        } else {
+            resolveInfos = getLaunchableResolveInfos(mContext.getPackageManager(), null);
+            fingerprints.put(Long.MIN_VALUE, getFingerprint15(resolveInfos, updateTimes));
+        }
+
+        return new Enumeration(fingerprints, profiles, resolveInfos);
+    }
+
+    /**
+     * This method fingerprints the launchable activities of a single profile, the same way
+     * {@link #enumerate()} fingerprints every profile.
+     *
+     * @param user The profile to fingerprint, ignored prior to API 24.
+     * @return The fingerprint of the profile.
+     */
+    public long getFingerprint(@Nullable final UserHandle user) {
+        final Map<String, Long> updateTimes = new HashMap<>();
+        final long fingerprint;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            fingerprint = getFingerprint24(new ProfileQuery(user).call(), updateTimes);
+        } else {
+            fingerprint = getFingerprint15(
+                    getLaunchableResolveInfos(mContext.getPackageManager(), null), updateTimes);
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * This method waits for the enumeration of a profile. A profile which failed to enumerate is
+     * not left out, as it would be taken to have been removed; it is enumerated again on the
+     * calling thread instead.
+     *
+     * @param future The pending enumeration.
+     * @param user   The profile being enumerated.
+     * @return The launchable activities of the profile.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private List<LauncherActivityInfo> getQueryResult(
+            final Future<List<LauncherActivityInfo>> future, final UserHandle user) {
+        List<LauncherActivityInfo> infoList;
+
+        try {
+            infoList = future.get();
+        } catch (final ExecutionException e) {
+            Log.e(TAG, "Failed to enumerate profile, retrying.", e);
+            infoList = new ProfileQuery(user).call();
+        } catch (final InterruptedException e) {
+            Log.e(TAG, "Profile enumeration was interrupted, retrying.", e);
+            Thread.currentThread().interrupt();
+            infoList = new ProfileQuery(user).call();
+        }
+
+        return infoList;
+    }
+
+    private static long getFingerprintSeed() {
+        return Locale.getDefault().toString().hashCode();
+    }
+
+    /**
+     * This method fingerprints the launchable activities of a profile in API 24+.
+     *
+     * @param infoList    The launchable activities of the profile.
+     * @param updateTimes The update times looked up so far, keyed by package name.
+     * @return The fingerprint of the profile.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private long getFingerprint24(final Iterable<LauncherActivityInfo> infoList,
+                                  final Map<String, Long> updateTimes) {
+        final PackageManager pm = mContext.getPackageManager();
+        long fingerprint = getFingerprintSeed();
+
+        for (final LauncherActivityInfo info : infoList) {
+            if (!mLauncherName.startsWith(info.getName())) {
+                fingerprint += mix(info.getComponentName().hashCode(), getLastUpdateTime(pm,
+                        info.getComponentName().getPackageName(), updateTimes));
+            }
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * This method fingerprints the launchable activities in SDK 15-23.
+     *
+     * @param infoList    The launchable activities.
+     * @param updateTimes The update times looked up so far, keyed by package name.
+     * @return The fingerprint of the launchable activities.
+     */
+    private long getFingerprint15(final Iterable<ResolveInfo> infoList,
+                                  final Map<String, Long> updateTimes) {
+        final PackageManager pm = mContext.getPackageManager();
+        long fingerprint = getFingerprintSeed();
+
+        for (final ResolveInfo info : infoList) {
+            final ActivityInfo activityInfo = info.activityInfo;
+
+            if (!mLauncherName.startsWith(activityInfo.packageName)) {
+                fingerprint += mix((activityInfo.packageName + '/' + activityInfo.name)
+                        .hashCode(), getLastUpdateTime(pm, activityInfo.packageName, updateTimes));
+            }
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * This method returns the time a package was last installed or updated. Unlike the installed
+     * location of a package, which alternates between two paths prior to API 26, this changes
+     * with every update.
+     *
+     * @param pm          The PackageManager to query.
+     * @param packageName The package to look up.
+     * @param updateTimes The update times looked up so far, keyed by package name.
+     * @return The time the package was last updated, {@code 0L} if it is not installed.
+     */
+    private static long getLastUpdateTime(final PackageManager pm, final String packageName,
+                                          final Map<String, Long> updateTimes) {
+        Long updateTime = updateTimes.get(packageName);
+
+        if (updateTime == null) {
+            // Packages of other profiles may not be installed for this user.
+            final int flags;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                flags = PackageManager.MATCH_UNINSTALLED_PACKAGES;
+            } else {
+                flags = 0;
+            }
+
+            try {
+                updateTime = pm.getPackageInfo(packageName, flags).lastUpdateTime;
+            } catch (final PackageManager.NameNotFoundException ignored) {
+                updateTime = 0L;
+            }
+
+            updateTimes.put(packageName, updateTime);
+        }
+
+        return updateTime;
+    }
+
+    /**
+     * This method mixes the identity of a launchable into a well distributed value, so the sum of
+     * these values is independent of enumeration order.
+     *
+     * @param componentHash  The hash of the component of the launchable.
+     * @param lastUpdateTime The time the package of the launchable was last updated.
+     * @return The mixed value.
+     */
+    private static long mix(final int componentHash, final long lastUpdateTime) {
+        long value = componentHash * 0x9e3779b97f4a7c15L + lastUpdateTime;
+
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+
+        return value;
+    }
+
+    /**
+     * This method enumerates the launchables of a single package.
+     *
+     * @param packageName The package to enumerate.
+     * @param user        The user to enumerate the package for, ignored prior to API 24.
+     * @return The launchables of the package, without persistent information.
+     */
+    @NonNull
+    public List<LaunchableActivity> loadPackage(@NonNull final String packageName,
+                                                @Nullable final UserHandle user) {
+        final List<LaunchableActivity> launchables;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            final LauncherApps launcherApps =
+                    (LauncherApps) mContext.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+
+            launchables = createLaunchables24(launcherApps.getActivityList(packageName, user),
+                    null);
+        } else {
+            launchables = createLaunchables15(
+                    getLaunchableResolveInfos(mContext.getPackageManager(), packageName), false,
+                    null);
+        }
+
+        return launchables;
+    }
+
+    /**
+     * This interface receives launchables as they are enumerated.
+     */
+    public interface Listener {
+
+        /**
+         * Called with a chunk of launchables as soon as they were created.
+         *
+         * @param launchables The newly created launchables, without persistent information.
+         */
+        void onLaunchablesLoaded(List<LaunchableActivity> launchables);
+
+        /**
+         * Called once labels which were delivered as placeholders have been loaded. The
+         * delivered launchables are left untouched.
+         *
+         * @param launchables Relabeled copies of the launchables delivered with placeholders,
+         *                    without persistent information.
+         */
+        void onLabelsLoaded(List<LaunchableActivity> launchables);
+    }
+
+    /**
+     * This class creates the launchables of a profile from its enumerated activities.
+     */
+    private final class ProfileCreation implements Callable<List<LaunchableActivity>> {
+
+        private final List<LauncherActivityInfo> mInfoList;
+
+        @Nullable
+        private final Listener mListener;
+
+        private ProfileCreation(final List<LauncherActivityInfo> infoList,
+                                @Nullable final Listener listener) {
+            mInfoList = infoList;
+            mListener = listener;
+        }
+
+        @Override
+        public List<LaunchableActivity> call() {
+            return createLaunchables24(mInfoList, mListener);
+        }
+    }
+
+    /**
+     * This class enumerates the launchable activities of a profile.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private final class ProfileQuery implements Callable<List<LauncherActivityInfo>> {
+
+        private final UserHandle mUser;
+
+        private ProfileQuery(final UserHandle user) {
+            mUser = user;
+        }
+
+        @Override
+        public List<LauncherActivityInfo> call() {
+            final LauncherApps launcherApps =
+                    (LauncherApps) mContext.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+
+            return launcherApps.getActivityList(null, mUser);
+        }
+    }
+
+    /**
+     * This class holds a single enumeration of the launchable activities of every profile, and
+     * the fingerprint of each profile.
+     */
+    public static final class Enumeration {
+
+        private final Map<Long, Long> mFingerprints;
+
+        /**
+         * The launchable activities of each profile from API 24, keyed by user serial.
+         */
+        private final Map<Long, List<LauncherActivityInfo>> mProfiles;
+
+        /**
+         * The launchable activities prior to API 24.
+         */
+        private final Collection<ResolveInfo> mResolveInfos;
+
+        private Enumeration(final Map<Long, Long> fingerprints,
+                            final Map<Long, List<LauncherActivityInfo>> profiles,
+                            final Collection<ResolveInfo> resolveInfos) {
+            mFingerprints = fingerprints;
+            mProfiles = profiles;
+            mResolveInfos = resolveInfos;
+        }
+
+        /**
+         * This method returns the fingerprint of the catalog of every profile.
+         *
+         * @return The fingerprint of each profile, keyed by user serial. Prior to API 24, a
+         * single fingerprint is returned, keyed by {@code Long.MIN_VALUE}.
+         */
+        @NonNull
+        public Map<Long, Long> getFingerprints() {
+            return mFingerprints;
+        }
+    }
+}
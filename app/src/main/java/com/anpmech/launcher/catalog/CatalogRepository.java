@@ -0,0 +1,794 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.catalog;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.anpmech.launcher.BuildConfig;
+import com.anpmech.launcher.LaunchableActivity;
+import com.anpmech.launcher.LaunchableAdapter;
+import com.anpmech.launcher.R;
+import com.anpmech.launcher.SharedLauncherPrefs;
+import com.anpmech.launcher.activities.SettingsActivity;
+import com.anpmech.launcher.monitor.LauncherAppsMonitor;
+import com.anpmech.launcher.monitor.PackageChangeAggregator;
+import com.anpmech.launcher.monitor.PackageChangeAggregator.PackageChange;
+import com.anpmech.launcher.monitor.PackageChangedReceiver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class owns the catalog of {@link LaunchableActivity} objects for the lifetime of the
+ * process, independent of any {@link android.app.Activity}.
+ * <p>
+ * The catalog, its adapter, the icon loading threads and the package change monitoring are
+ * created once. The catalog is first filled from a {@link CatalogSnapshot} if available, read in
+ * the background like every other catalog read. Activities attach to the repository when
+ * started and detach when stopped. An activity which is recreated, or started again after being
+ * stopped, reattaches to the warm catalog, which is only reconciled with profiles which changed
+ * in the meantime.
+ * <p>
+ * From API 21, package changes are received from a {@link LauncherAppsMonitor} for the lifetime
+ * of the process, so the catalog is kept current even while no activity is attached. Prior to
+ * API 21, package change broadcasts are also received for the lifetime of the process, but are
+ * held by the {@link PackageChangedReceiver} while no activity is attached, and applied once an
+ * activity attaches.
+ * <p>
+ * Memory is trimmed by the attached activity, which knows which launchables are on screen, and by
+ * this repository while no activity is attached.
+ * <p>
+ * This class is expected to only be called from the main thread.
+ */
+public final class CatalogRepository implements PackageChangeAggregator.Listener {
+
+    /**
+     * The number of launchables predicted to be launched next.
+     */
+    private static final int PREDICTION_COUNT = 4;
+
+    /**
+     * The preference key of the number of launches which were predicted.
+     */
+    private static final String PREDICTION_HITS_KEY = "hits";
+
+    /**
+     * The preference key of the number of launches which were not predicted.
+     */
+    private static final String PREDICTION_MISSES_KEY = "misses";
+
+    /**
+     * The name of the preferences the prediction hit and miss counts are kept in.
+     */
+    private static final String PREDICTION_PREFERENCES_NAME = "LaunchPredictions";
+
+    private static final String TAG = "CatalogRepository";
+
+    private static CatalogRepository sInstance;
+
+    private final LaunchableAdapter<LaunchableActivity> mAdapter;
+
+    private final Context mContext;
+
+    /**
+     * The profile fingerprints of the adapter as displayed, keyed by user serial. These are
+     * stored with the {@link CatalogSnapshot}, and only accessed from the main thread.
+     */
+    private final Map<Long, Long> mDisplayedFingerprints = new HashMap<>();
+
+    /**
+     * The profile fingerprints the adapter was last reconciled with, keyed by user serial. These
+     * are published before the reconciled catalog is swapped in on the main thread, so the next
+     * reconciliation does not enumerate the same profiles again. Only accessed from the
+     * {@link CatalogWorker}.
+     */
+    private final Map<Long, Long> mFingerprints = new HashMap<>();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * This field enumerates {@link LaunchableActivity} objects from the system.
+     */
+    private final CatalogLoader mLoader;
+
+    /**
+     * Synchronize to this lock when the adapter is modified with results from the
+     * {@link CatalogWorker}.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * This {@link BroadcastReceiver} implements an updater for package changes prior to API 21.
+     */
+    private final BroadcastReceiver mPackageChangeReceiver = new PackageChangedReceiver();
+
+    /**
+     * This collects the package changes into batches.
+     */
+    private final PackageChangeAggregator mPackageChanges = new PackageChangeAggregator(this);
+
+    /**
+     * The currently attached listener, null if no activity is attached.
+     */
+    private Listener mListener;
+
+    /**
+     * The keys of the launchables predicted to be launched next, null if no prediction is
+     * outstanding.
+     */
+    private Set<String> mPrediction;
+
+    /**
+     * The persisted number of launches which were, and were not, predicted.
+     */
+    private final SharedPreferences mPredictionStats;
+
+    /**
+     * Whether a launch was recorded since the catalog was last sorted.
+     */
+    private boolean mSortPending;
+
+    private CatalogRepository(@NonNull final Context context) {
+        mContext = context;
+        mLoader = new CatalogLoader(context);
+        mPredictionStats =
+                context.getSharedPreferences(PREDICTION_PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        mAdapter = new LaunchableAdapter<>(getWebLaunchable(context), context,
+                R.layout.app_grid_item, 0);
+
+        // Queued ahead of any reconciliation, which depends on the restored fingerprints.
+        CatalogWorker.post(new SnapshotLoader());
+        CatalogWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.loadScores();
+            }
+        });
+
+        context.registerComponentCallbacks(new TrimCallbacks());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            new LauncherAppsMonitor(context, mPackageChanges).register();
+        } else {
+            context.registerReceiver(mPackageChangeReceiver, PackageChangedReceiver.getFilter());
+        }
+    }
+
+    /**
+     * This method returns the repository for this process, creating it if necessary.
+     *
+     * @param context The current context.
+     * @return The repository for this process.
+     */
+    @NonNull
+    public static synchronized CatalogRepository getInstance(@NonNull final Context context) {
+        if (sInstance == null) {
+            sInstance = new CatalogRepository(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Returns a web search {@link LaunchableActivity}.
+     *
+     * @param context The current context.
+     * @return A web search {@link LaunchableActivity}.
+     */
+    private static LaunchableActivity getWebLaunchable(final Context context) {
+        final Intent intent = new Intent(Intent.ACTION_WEB_SEARCH);
+
+        return new LaunchableActivity(intent, context.getString(R.string.web_search),
+                R.drawable.ic_baseline_search_24);
+    }
+
+    /**
+     * This method attaches a listener to this repository. Package changes held while no listener
+     * was attached are applied, and the catalog is reconciled with the system in the background.
+     *
+     * @param listener The listener to notify of catalog changes until detached.
+     * @return The adapter holding the catalog.
+     */
+    @NonNull
+    public LaunchableAdapter<LaunchableActivity> attach(@NonNull final Listener listener) {
+        if (mListener == null && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            PackageChangedReceiver.setCallback(mPackageChanges);
+        }
+
+        mListener = listener;
+        mAdapter.updateDisplayConfig(mContext);
+
+        if (mSortPending) {
+            mSortPending = false;
+            // Queued after the launch bookkeeping, so the sort sees the persisted statistics.
+            CatalogWorker.post(new Runnable() {
+                @Override
+                public void run() {
+                    runOnUiThread(new LaunchSorter());
+                }
+            });
+        }
+
+        CatalogWorker.post(new CatalogReconciler(false));
+
+        return mAdapter;
+    }
+
+    /**
+     * This method detaches a listener from this repository, holds package change broadcasts
+     * until the next attachment, and persists the catalog. The catalog itself is kept for the
+     * next attachment.
+     *
+     * @param listener The listener previously passed to {@link #attach(Listener)}.
+     */
+    public void detach(@NonNull final Listener listener) {
+        //noinspection ObjectEquality
+        if (mListener == listener) {
+            final List<LaunchableActivity> launchables = mAdapter.copyLaunchables();
+            final Map<Long, Long> fingerprints = new HashMap<>(mDisplayedFingerprints);
+
+            CatalogWorker.post(new Runnable() {
+                @Override
+                public void run() {
+                    CatalogSnapshot.write(mContext, launchables, fingerprints);
+                }
+            });
+
+            mListener = null;
+
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                PackageChangedReceiver.setCallback(null);
+            }
+        } else {
+            Log.v(TAG, "Ignoring detach from a listener which is not attached.");
+        }
+    }
+
+    /**
+     * Returns a {@link LaunchableActivity} for the settings of this launcher, used when the action
+     * bar is disabled.
+     *
+     * @return A settings {@link LaunchableActivity}.
+     */
+    private LaunchableActivity getSettingsLaunchable() {
+        final Intent intent = new Intent(mContext, SettingsActivity.class);
+
+        return new LaunchableActivity(intent, "Keikai Settings", R.drawable.ic_launcher);
+    }
+
+    /**
+     * This method notifies the attached listener, if any, that the catalog changed.
+     */
+    private void notifyListener() {
+        if (mListener != null) {
+            mListener.onCatalogChanged();
+        }
+    }
+
+    /**
+     * Called with the package changes collected by the {@link PackageChangeAggregator}.
+     *
+     * @param changes The changes, at most one per package and user.
+     */
+    @Override
+    public void onPackagesChanged(final Collection<PackageChange> changes) {
+        CatalogWorker.post(new PackageChangeApplier(changes));
+    }
+
+    /**
+     * Called when package changes were lost, every package is checked again.
+     */
+    @Override
+    public void onPackagesInvalidated() {
+        CatalogWorker.post(new CatalogReconciler(true));
+    }
+
+    /**
+     * This method records a launch of a {@link LaunchableActivity}.
+     * <p>
+     * The launch statistics are updated immediately, while persisting them is queued for the
+     * {@link CatalogWorker}. The catalog is only sorted again when a listener is next attached,
+     * as the launcher is not visible until then.
+     *
+     * @param launchable The launchable which was launched.
+     */
+    public void recordLaunch(@NonNull final LaunchableActivity launchable) {
+        if (mPrediction != null) {
+            final String key;
+
+            if (mPrediction.contains(launchable.getKey())) {
+                key = PREDICTION_HITS_KEY;
+            } else {
+                key = PREDICTION_MISSES_KEY;
+            }
+
+            mPrediction = null;
+            mPredictionStats.edit().putInt(key, mPredictionStats.getInt(key, 0) + 1).apply();
+        }
+
+        launchable.setLaunchTime();
+        launchable.addUsage();
+        mSortPending = true;
+
+        CatalogWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.recordLaunch(launchable);
+            }
+        });
+    }
+
+    /**
+     * This method returns the share of launches which were predicted by
+     * {@link #predictLaunches()}, over the lifetime of the installation.
+     *
+     * @return The prediction hit rate, {@code -1.0f} if no prediction was scored yet.
+     */
+    public float getPredictionHitRate() {
+        final int hits = mPredictionStats.getInt(PREDICTION_HITS_KEY, 0);
+        final int total = hits + mPredictionStats.getInt(PREDICTION_MISSES_KEY, 0);
+
+        return total == 0 ? -1.0f : (float) hits / total;
+    }
+
+    /**
+     * This method predicts the launchables most likely to be launched next, from the launches
+     * recorded at this time of day, and loads their icons and labels ahead of them being
+     * displayed. The next launch is scored against the prediction, see
+     * {@link #getPredictionHitRate()}.
+     * <p>
+     * This is expected to be called when the home screen is requested.
+     */
+    public void predictLaunches() {
+        mPrediction = null;
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Predicting launches, hit rate so far: " + getPredictionHitRate());
+        }
+
+        CatalogWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                final List<LaunchableActivity> likely =
+                        mAdapter.getLikelyLaunches(PREDICTION_COUNT);
+
+                final Set<String> keys = new HashSet<>(likely.size());
+
+                mAdapter.prefetch(mContext, likely);
+                for (final LaunchableActivity launchable : likely) {
+                    keys.add(launchable.getKey());
+                }
+
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!keys.isEmpty()) {
+                            mPrediction = keys;
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void runOnUiThread(final Runnable runnable) {
+        mHandler.post(runnable);
+    }
+
+    /**
+     * This method publishes fingerprints, reconciled on the {@link CatalogWorker}, to those of
+     * the adapter as displayed.
+     *
+     * @param fingerprints The fingerprints to publish, keyed by user serial.
+     * @param replace      Whether the fingerprints replace all those displayed.
+     */
+    private void setDisplayedFingerprints(final Map<Long, Long> fingerprints,
+                                          final boolean replace) {
+        if (replace) {
+            mDisplayedFingerprints.clear();
+        }
+
+        mDisplayedFingerprints.putAll(fingerprints);
+    }
+
+    /**
+     * This interface is notified of changes to the catalog made by this repository.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the main thread after the catalog was modified.
+         */
+        void onCatalogChanged();
+    }
+
+    /**
+     * This class enumerates and hydrates the catalog in the background, streaming it into the
+     * adapter in sorted chunks as it is enumerated. Once enumeration finishes, the adapter is
+     * reconciled with the catalog, removing launchables which no longer exist. The adapter is
+     * either empty, was restored from a {@link CatalogSnapshot}, or is left from a previous
+     * attachment.
+     * <p>
+     * Unless a full reconciliation is requested, only profiles whose fingerprint changed since
+     * the adapter was last reconciled are enumerated.
+     */
+    private final class CatalogReconciler implements Runnable, CatalogLoader.Listener {
+
+        private final boolean mFull;
+
+        private CatalogReconciler(final boolean full) {
+            mFull = full;
+        }
+
+        /**
+         * This method returns the profiles which need to be enumerated.
+         *
+         * @param fingerprints The current profile fingerprints.
+         * @return The user serials of profiles which changed, appeared or disappeared since the
+         * adapter was last reconciled.
+         */
+        private Set<Long> getStaleProfiles(final Map<Long, Long> fingerprints) {
+            final Set<Long> stale = new HashSet<>(mFingerprints.keySet());
+
+            for (final Map.Entry<Long, Long> entry : fingerprints.entrySet()) {
+                final Long serial = entry.getKey();
+
+                if (mFull || !entry.getValue().equals(mFingerprints.get(serial))) {
+                    stale.add(serial);
+                } else {
+                    stale.remove(serial);
+                }
+            }
+
+            return stale;
+        }
+
+        @Override
+        public void onLaunchablesLoaded(final List<LaunchableActivity> launchables) {
+            mAdapter.hydrate(launchables, mContext);
+
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mLock) {
+                        if (mAdapter.merge(launchables, mContext)) {
+                            notifyListener();
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onLabelsLoaded(final List<LaunchableActivity> launchables) {
+            mAdapter.hydrate(launchables, mContext);
+
+            final Comparator<LaunchableActivity> order = LaunchableAdapter.getOrder(mContext);
+            final List<LaunchableActivity> base = mAdapter.copyLaunchables();
+            final List<LaunchableActivity> replacement = new ArrayList<>(base);
+
+            LaunchableAdapter.relabel(replacement, launchables, order);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mLock) {
+                        mAdapter.setNotifyOnChange(false);
+
+                        if (!mAdapter.swap(base, replacement)) {
+                            // Chunks were merged in the meantime, relabel the adapter directly.
+                            mAdapter.relabel(launchables, mContext);
+                        }
+
+                        mAdapter.notifyDataSetChanged();
+                        notifyListener();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            final CatalogLoader.Enumeration enumeration = mLoader.enumerate();
+            final Map<Long, Long> fingerprints = enumeration.getFingerprints();
+            final Set<Long> stale = getStaleProfiles(fingerprints);
+            final List<LaunchableActivity> catalog;
+            final List<LaunchableActivity> settings;
+
+            if (stale.isEmpty()) {
+                catalog = Collections.emptyList();
+            } else {
+                catalog = mLoader.loadProfiles(enumeration, stale, this);
+            }
+
+            mFingerprints.clear();
+            mFingerprints.putAll(fingerprints);
+
+            if (new SharedLauncherPrefs(mContext).isActionBarEnabled()) {
+                settings = Collections.emptyList();
+            } else {
+                settings = Collections.singletonList(getSettingsLaunchable());
+                mAdapter.hydrate(settings, mContext);
+            }
+
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mLock) {
+                        boolean modified = false;
+                        mAdapter.setNotifyOnChange(false);
+
+                        if (!stale.isEmpty()) {
+                            modified = mAdapter.reconcile(catalog, stale);
+                        }
+
+                        modified |= mAdapter.reconcilePackage(mContext.getPackageName(),
+                                Long.MIN_VALUE, settings, mContext);
+                        setDisplayedFingerprints(fingerprints, true);
+
+                        if (modified) {
+                            mAdapter.sortApps(mContext);
+                            mAdapter.notifyDataSetChanged();
+                            notifyListener();
+                        } else {
+                            mAdapter.setNotifyOnChange(true);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * This class reads the {@link CatalogSnapshot} on the {@link CatalogWorker}, and delivers it
+     * to the adapter on the main thread.
+     */
+    private final class SnapshotLoader implements Runnable {
+
+        @Override
+        public void run() {
+            final List<LaunchableActivity> snapshot =
+                    CatalogSnapshot.read(mContext, mFingerprints);
+
+            if (snapshot != null) {
+                final Map<Long, Long> fingerprints = new HashMap<>(mFingerprints);
+
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (mLock) {
+                            setDisplayedFingerprints(fingerprints, true);
+
+                            if (mAdapter.merge(snapshot, mContext)) {
+                                notifyListener();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * This class sorts the catalog by the statistics of the launches recorded while the launcher
+     * was not visible.
+     */
+    private final class LaunchSorter implements Runnable {
+
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                mAdapter.sortApps(mContext);
+            }
+
+            notifyListener();
+        }
+    }
+
+    /**
+     * This class applies a batch of package changes to the adapter. It runs on the
+     * {@link CatalogWorker}, where the changed packages are enumerated, launchables new to the
+     * adapter are hydrated, and the changes are reconciled into a copy of the adapter. Only the
+     * swap to the reconciled copy is posted to the main thread.
+     * <p>
+     * The fingerprints of the changed profiles are taken again, so the next attachment does not
+     * enumerate a profile only because of changes which were already applied.
+     */
+    private final class PackageChangeApplier implements Runnable {
+
+        private final Collection<PackageChange> mChanges;
+
+        private PackageChangeApplier(final Collection<PackageChange> changes) {
+            mChanges = changes;
+        }
+
+        /**
+         * This method returns the user a package change belongs to. Prior to API 24 the catalog
+         * is not separated by user.
+         *
+         * @param change The package change to return the user for.
+         * @return The user of the change, null prior to API 24.
+         */
+        @Nullable
+        private UserHandle getUser(final PackageChange change) {
+            final UserHandle user;
+
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+                user = null;
+            } else if (change.getUser() != null) {
+                user = change.getUser();
+            } else if (change.getUid() == PackageChange.UNKNOWN_UID) {
+                user = Process.myUserHandle();
+            } else {
+                user = UserHandle.getUserHandleForUid(change.getUid());
+            }
+
+            return user;
+        }
+
+        /**
+         * This method returns the user serial the launchables of a user are created with.
+         *
+         * @param user The user to return the serial for, null prior to API 24.
+         * @return The user serial, {@code Long.MIN_VALUE} prior to API 24.
+         */
+        private long getUserSerial(@Nullable final UserHandle user) {
+            final long serial;
+
+            if (user == null) {
+                serial = Long.MIN_VALUE;
+            } else {
+                final UserManager manager =
+                        (UserManager) mContext.getSystemService(Context.USER_SERVICE);
+
+                serial = manager.getSerialNumberForUser(user);
+            }
+
+            return serial;
+        }
+
+        @Override
+        public void run() {
+            final int changeCount = mChanges.size();
+            final List<PackageChange> changes = new ArrayList<>(mChanges);
+            final List<List<LaunchableActivity>> enumerated = new ArrayList<>(changeCount);
+            final long[] serials = new long[changeCount];
+            final Collection<String> known = mAdapter.getKeys();
+            final List<LaunchableActivity> added = new ArrayList<>();
+            final Map<Long, UserHandle> users = new HashMap<>();
+
+            for (int i = 0; i < changeCount; i++) {
+                final PackageChange change = changes.get(i);
+                final UserHandle user = getUser(change);
+                final List<LaunchableActivity> launchables;
+
+                if (change.getAction() == PackageChange.DISAPPEARED) {
+                    launchables = Collections.emptyList();
+                } else {
+                    launchables = mLoader.loadPackage(change.getPackageName(), user);
+                }
+
+                for (final LaunchableActivity launchable : launchables) {
+                    if (!known.contains(launchable.getKey())) {
+                        added.add(launchable);
+                    }
+                }
+
+                serials[i] = getUserSerial(user);
+                users.put(serials[i], user);
+                enumerated.add(launchables);
+            }
+
+            final Map<Long, Long> fingerprints = new HashMap<>(users.size());
+            for (final Map.Entry<Long, UserHandle> entry : users.entrySet()) {
+                // Profiles not yet reconciled are left to the next reconciliation.
+                if (mFingerprints.containsKey(entry.getKey())) {
+                    fingerprints.put(entry.getKey(), mLoader.getFingerprint(entry.getValue()));
+                }
+            }
+            mFingerprints.putAll(fingerprints);
+
+            mAdapter.hydrate(added, mContext);
+
+            final Comparator<LaunchableActivity> order = LaunchableAdapter.getOrder(mContext);
+            final List<LaunchableActivity> base = mAdapter.copyLaunchables();
+            final List<LaunchableActivity> replacement = new ArrayList<>(base);
+            boolean modified = false;
+
+            for (int i = 0; i < changeCount; i++) {
+                modified |= LaunchableAdapter.reconcilePackage(replacement,
+                        changes.get(i).getPackageName(), serials[i], enumerated.get(i), order);
+            }
+
+            if (modified) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (mLock) {
+                            setDisplayedFingerprints(fingerprints, false);
+                            mAdapter.setNotifyOnChange(false);
+
+                            if (!mAdapter.swap(base, replacement)) {
+                                // The adapter changed in the meantime, apply the changes to it
+                                // directly.
+                                for (int i = 0; i < changeCount; i++) {
+                                    mAdapter.reconcilePackage(changes.get(i).getPackageName(),
+                                            serials[i], enumerated.get(i), mContext);
+                                }
+                                mAdapter.sort(order);
+                            }
+
+                            mAdapter.notifyDataSetChanged();
+                            notifyListener();
+                        }
+                    }
+                });
+            } else if (!fingerprints.isEmpty()) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        setDisplayedFingerprints(fingerprints, false);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * This class trims the catalog while no activity is attached, when nothing is on screen.
+     */
+    private final class TrimCallbacks implements ComponentCallbacks2 {
+
+        @Override
+        public void onConfigurationChanged(@NonNull final Configuration newConfig) {
+            // Configuration changes are handled by the attached activity.
+        }
+
+        @Override
+        public void onLowMemory() {
+            onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onTrimMemory(final int level) {
+            if (mListener == null) {
+                mAdapter.trimMemory(level, -1, -1);
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.catalog;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.anpmech.launcher.LaunchableActivity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads and writes a compact binary snapshot of the last sorted catalog of
+ * {@link LaunchableActivity} objects.
+ * <p>
+ * The snapshot is used to display the catalog immediately on a cold start, before the catalog
+ * has been enumerated from the system. It also holds the profile fingerprints from
+ * {@link CatalogLoader#enumerate()} the catalog was last reconciled with, so only profiles
+ * which changed since need their launchables created again.
+ */
+public final class CatalogSnapshot {
+
+    private static final String FILE_NAME = "catalog.snapshot";
+
+    /**
+     * This is used to recognize a snapshot file.
+     */
+    private static final int MAGIC = 0x4b4c4353;
+
+    private static final String TAG = "CatalogSnapshot";
+
+    /**
+     * The snapshot format version, increment this if the format changes.
+     */
+    private static final int VERSION = 2;
+
+    private CatalogSnapshot() {
+        throw new UnsupportedOperationException("This class cannot be instantiated.");
+    }
+
+    private static File getFile(final Context context) {
+        return new File(context.getCacheDir(), FILE_NAME);
+    }
+
+    /**
+     * This method removes any stored snapshot.
+     *
+     * @param context The current context.
+     */
+    public static void delete(@NonNull final Context context) {
+        if (!getFile(context).delete()) {
+            Log.v(TAG, "No snapshot to delete.");
+        }
+    }
+
+    /**
+     * This method reads the last stored snapshot, in the order it was stored.
+     *
+     * @param context      The current context.
+     * @param fingerprints The map to read the stored profile fingerprints into, left untouched if
+     *                     there is no valid snapshot.
+     * @return The launchables in the snapshot, null if there is no valid snapshot.
+     */
+    @Nullable
+    public static List<LaunchableActivity> read(@NonNull final Context context,
+                                                @NonNull final Map<Long, Long> fingerprints) {
+        final File file = getFile(context);
+        List<LaunchableActivity> launchables = null;
+
+        if (file.exists()) {
+            DataInputStream in = null;
+
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    final int count = in.readInt();
+                    launchables = new ArrayList<>(count);
+
+                    for (int i = 0; i < count; i++) {
+                        launchables.add(readLaunchable(in));
+                    }
+
+                    final int profileCount = in.readInt();
+                    final Map<Long, Long> stored = new HashMap<>(profileCount);
+                    for (int i = 0; i < profileCount; i++) {
+                        stored.put(in.readLong(), in.readLong());
+                    }
+                    fingerprints.putAll(stored);
+                }
+            } catch (final IOException | RuntimeException e) {
+                Log.w(TAG, "Unable to read the catalog snapshot, discarding.", e);
+                launchables = null;
+            } finally {
+                close(in);
+            }
+
+            if (launchables == null) {
+                delete(context);
+            }
+        }
+
+        return launchables;
+    }
+
+    private static LaunchableActivity readLaunchable(final DataInputStream in)
+            throws IOException {
+        final String label = in.readUTF();
+        final ComponentName name = ComponentName.unflattenFromString(in.readUTF());
+
+        if (name == null) {
+            throw new IOException("Snapshot contained an invalid component.");
+        }
+
+        final LaunchableActivity launchable = new LaunchableActivity(name, label, in.readLong());
+        launchable.setLaunchTime(in.readLong());
+        launchable.setPriority(in.readInt());
+        launchable.setUsageQuantity(in.readInt());
+        launchable.setUsageTime(in.readLong());
+        launchable.setFrecency(in.readDouble());
+
+        return launchable;
+    }
+
+    /**
+     * This method stores a snapshot of the launchables. This method performs I/O, and should not
+     * be called from the main thread.
+     *
+     * @param context      The current context.
+     * @param launchables  The sorted launchables to store. Launchables without a component are
+     *                     not stored.
+     * @param fingerprints The profile fingerprints the launchables were last reconciled with.
+     */
+    public static void write(@NonNull final Context context,
+                             @NonNull final Collection<? extends LaunchableActivity> launchables,
+                             @NonNull final Map<Long, Long> fingerprints) {
+        final File file = getFile(context);
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final List<LaunchableActivity> stored = new ArrayList<>(launchables.size());
+        DataOutputStream out = null;
+        boolean written = false;
+
+        for (final LaunchableActivity launchable : launchables) {
+            if (launchable.getComponent() != null) {
+                stored.add(launchable);
+            }
+        }
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stored.size());
+
+            for (final LaunchableActivity launchable : stored) {
+                out.writeUTF(launchable.toString());
+                out.writeUTF(launchable.getComponent().flattenToShortString());
+                out.writeLong(launchable.getUserSerial());
+                out.writeLong(launchable.getLaunchTime());
+                out.writeInt(launchable.getPriority());
+                out.writeInt(launchable.getUsageQuantity());
+                out.writeLong(launchable.getUsageTime());
+                out.writeDouble(launchable.getFrecency());
+            }
+
+            out.writeInt(fingerprints.size());
+            for (final Map.Entry<Long, Long> entry : fingerprints.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+
+            out.close();
+            out = null;
+            written = tmpFile.renameTo(file);
+        } catch (final IOException e) {
+            Log.w(TAG, "Unable to write the catalog snapshot.", e);
+        } finally {
+            close(out);
+
+            if (!written && !tmpFile.delete()) {
+                Log.v(TAG, "No temporary snapshot to remove.");
+            }
+        }
+    }
+
+    private static void close(@Nullable final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                Log.v(TAG, "Failed to close the snapshot.", e);
+            }
+        }
+    }
+}
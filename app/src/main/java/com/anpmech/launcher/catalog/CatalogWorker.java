@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.catalog;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+/**
+ * This class is the single background thread all catalog work is performed on.
+ * <p>
+ * Enumeration, hydration and snapshot I/O for the catalog are posted here, so they never run on
+ * the main thread, and are performed in the order they were posted. Only the results are posted
+ * back to the main thread.
+ */
+public final class CatalogWorker {
+
+    private static final Handler HANDLER;
+
+    static {
+        final HandlerThread thread =
+                new HandlerThread("CatalogWorker", Process.THREAD_PRIORITY_BACKGROUND);
+
+        thread.start();
+        HANDLER = new Handler(thread.getLooper());
+    }
+
+    private CatalogWorker() {
+        throw new UnsupportedOperationException("This class cannot be instantiated.");
+    }
+
+    /**
+     * This method queues work for the catalog worker, to be run after all previously queued
+     * work.
+     *
+     * @param runnable The work to run.
+     */
+    public static void post(@NonNull final Runnable runnable) {
+        HANDLER.post(runnable);
+    }
+}
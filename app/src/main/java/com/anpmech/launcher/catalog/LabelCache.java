@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.catalog;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class caches activity labels for APIs 15-23, where loading a label requires a
+ * {@link android.content.pm.PackageManager} call per activity.
+ * <p>
+ * Labels are keyed by component and stored with a version stamp, the last update time of the
+ * installed package, so an updated package is not served a stale label. The whole cache is
+ * discarded if the locale changes. New labels are held in memory until {@link #commit()} writes
+ * them in a single batch.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class LabelCache {
+
+    private static final String KEY_LOCALE = "locale";
+
+    /**
+     * The name of the preferences labels were cached in prior to this class, keyed by package.
+     * These were retrieved with {@link android.app.Activity#getPreferences(int)}, which names
+     * them after {@link android.app.Activity#getLocalClassName()} of the search activity.
+     */
+    private static final String LEGACY_PREFERENCES_NAME = "activities.SearchActivity";
+
+    private static final String PREFERENCES_NAME = "LabelCache";
+
+    /**
+     * The separator between the version stamp and the label in a stored value.
+     */
+    private static final char SEPARATOR = ':';
+
+    private final Object mLock = new Object();
+
+    /**
+     * Labels which have not yet been committed, keyed by flattened component.
+     */
+    private final Map<String, String> mPending = new HashMap<>();
+
+    private final PackageManager mPackageManager;
+
+    private final SharedPreferences mPreferences;
+
+    /**
+     * The version stamps looked up since the last commit, keyed by package name.
+     */
+    private final Map<String, String> mVersions = new HashMap<>();
+
+    /**
+     * The sole constructor.
+     *
+     * @param context The current context.
+     */
+    public LabelCache(@NonNull final Context context) {
+        final String locale = Locale.getDefault().toString();
+
+        mPackageManager = context.getPackageManager();
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        if (!mPreferences.contains(KEY_LOCALE)) {
+            deleteLegacyPreferences(context);
+        }
+
+        if (!locale.equals(mPreferences.getString(KEY_LOCALE, null))) {
+            mPreferences.edit().clear().putString(KEY_LOCALE, locale).apply();
+        }
+    }
+
+    /**
+     * This method removes the labels cached prior to this class.
+     *
+     * @param context The current context.
+     */
+    private static void deleteLegacyPreferences(final Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            context.deleteSharedPreferences(LEGACY_PREFERENCES_NAME);
+        } else {
+            context.getSharedPreferences(LEGACY_PREFERENCES_NAME, Context.MODE_PRIVATE).edit()
+                    .clear().apply();
+        }
+    }
+
+    private static String getKey(final ActivityInfo info) {
+        return new ComponentName(info.packageName, info.name).flattenToShortString();
+    }
+
+    /**
+     * This method returns the version stamp of the package an activity belongs to, the time the
+     * package was last installed or updated. Stamps are looked up once per package between
+     * commits.
+     *
+     * @param info The activity to get the version stamp for.
+     * @return The version stamp of the package.
+     */
+    private String getVersion(final ActivityInfo info) {
+        final String packageName = info.packageName;
+        String version;
+
+        synchronized (mLock) {
+            version = mVersions.get(packageName);
+        }
+
+        if (version == null) {
+            long lastUpdateTime;
+
+            try {
+                final PackageInfo packageInfo = mPackageManager.getPackageInfo(packageName, 0);
+
+                lastUpdateTime = packageInfo.lastUpdateTime;
+            } catch (final PackageManager.NameNotFoundException ignored) {
+                lastUpdateTime = 0L;
+            }
+
+            version = Long.toHexString(lastUpdateTime);
+            synchronized (mLock) {
+                mVersions.put(packageName, version);
+            }
+        }
+
+        return version;
+    }
+
+    /**
+     * This method returns a label to display while the actual label is not yet loaded.
+     *
+     * @param info The activity to get the placeholder label for.
+     * @return The placeholder label.
+     */
+    @NonNull
+    public static String getPlaceholder(@NonNull final ResolveInfo info) {
+        final CharSequence nonLocalized = info.nonLocalizedLabel;
+        final String placeholder;
+
+        if (nonLocalized == null) {
+            placeholder = info.activityInfo.packageName;
+        } else {
+            placeholder = nonLocalized.toString();
+        }
+
+        return placeholder;
+    }
+
+    /**
+     * This method writes all labels added since the last commit in one batch.
+     */
+    public void commit() {
+        synchronized (mLock) {
+            if (!mPending.isEmpty()) {
+                final SharedPreferences.Editor editor = mPreferences.edit();
+
+                for (final Map.Entry<String, String> entry : mPending.entrySet()) {
+                    editor.putString(entry.getKey(), entry.getValue());
+                }
+
+                editor.apply();
+                mPending.clear();
+            }
+
+            mVersions.clear();
+        }
+    }
+
+    /**
+     * This method returns the cached label of an activity.
+     *
+     * @param info The activity to return the label for.
+     * @return The cached label, null if not cached, or cached for a different version of the
+     * package.
+     */
+    @Nullable
+    public String get(@NonNull final ResolveInfo info) {
+        final String key = getKey(info.activityInfo);
+        final String value;
+
+        synchronized (mLock) {
+            final String pending = mPending.get(key);
+
+            if (pending == null) {
+                value = mPreferences.getString(key, null);
+            } else {
+                value = pending;
+            }
+        }
+
+        String label = null;
+        if (value != null) {
+            final int separator = value.indexOf(SEPARATOR);
+
+            if (separator != -1 &&
+                    value.substring(0, separator).equals(getVersion(info.activityInfo))) {
+                label = value.substring(separator + 1);
+            }
+        }
+
+        return label;
+    }
+
+    /**
+     * This method adds a label to this cache. The label will be persisted on the next
+     * {@link #commit()}.
+     *
+     * @param info  The activity the label belongs to.
+     * @param label The label of the activity.
+     */
+    public void put(@NonNull final ResolveInfo info, @NonNull final String label) {
+        final ActivityInfo activityInfo = info.activityInfo;
+        final String version = getVersion(activityInfo);
+
+        synchronized (mLock) {
+            mPending.put(getKey(activityInfo), version + SEPARATOR + label);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.comparators;
+
+import com.anpmech.launcher.LaunchableActivity;
+
+import java.util.Comparator;
+
+/**
+ * This comparator orders by each of its comparators in turn, falling through to the next
+ * comparator on equality.
+ */
+public class ChainedOrder implements Comparator<LaunchableActivity> {
+
+    private final Comparator<? super LaunchableActivity>[] mComparators;
+
+    @SafeVarargs
+    public ChainedOrder(final Comparator<? super LaunchableActivity>... comparators) {
+        mComparators = comparators;
+    }
+
+    @Override
+    public int compare(final LaunchableActivity lhs, final LaunchableActivity rhs) {
+        int result = 0;
+
+        for (int i = 0; i < mComparators.length && result == 0; i++) {
+            result = mComparators[i].compare(lhs, rhs);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.monitor;
+
+import android.content.Context;
+import android.content.pm.LauncherApps;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.UserHandle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * This class receives package changes from {@link LauncherApps} and passes them on to a
+ * {@link PackageChangeCallback}.
+ * <p>
+ * Unlike {@link PackageChangedReceiver}, changes are reported for every profile with the user
+ * they belong to, and are received from registration for the lifetime of the process, regardless
+ * of the state of any activity. Changes are delivered on a dedicated background thread.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class LauncherAppsMonitor extends LauncherApps.Callback {
+
+    private static final String TAG = "LauncherAppsMonitor";
+
+    private final PackageChangeCallback mCallback;
+
+    private final LauncherApps mLauncherApps;
+
+    private HandlerThread mThread;
+
+    /**
+     * The sole constructor.
+     *
+     * @param context  The current context.
+     * @param callback The callback to pass the changes on to, called on a background thread.
+     */
+    public LauncherAppsMonitor(@NonNull final Context context,
+                               @NonNull final PackageChangeCallback callback) {
+        mLauncherApps = (LauncherApps) context.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+        mCallback = callback;
+    }
+
+    /**
+     * This method starts receiving package changes, until the process ends.
+     */
+    public void register() {
+        if (mThread == null) {
+            mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            mThread.start();
+            mLauncherApps.registerCallback(this, new Handler(mThread.getLooper()));
+        }
+    }
+
+    @Override
+    public void onPackageAdded(final String packageName, final UserHandle user) {
+        Log.d(TAG, "Package appeared: " + packageName);
+        mCallback.onPackageAppeared(packageName, user);
+    }
+
+    @Override
+    public void onPackageChanged(final String packageName, final UserHandle user) {
+        Log.d(TAG, "Package changed: " + packageName);
+        mCallback.onPackageModified(packageName, user);
+    }
+
+    @Override
+    public void onPackageRemoved(final String packageName, final UserHandle user) {
+        Log.d(TAG, "Package disappeared: " + packageName);
+        mCallback.onPackageDisappeared(packageName, user);
+    }
+
+    @Override
+    public void onPackagesAvailable(final String[] packageNames, final UserHandle user,
+                                    final boolean replacing) {
+        for (final String packageName : packageNames) {
+            onPackageAdded(packageName, user);
+        }
+    }
+
+    @Override
+    public void onPackagesSuspended(final String[] packageNames, final UserHandle user) {
+        for (final String packageName : packageNames) {
+            onPackageRemoved(packageName, user);
+        }
+    }
+
+    @Override
+    public void onPackagesUnavailable(final String[] packageNames, final UserHandle user,
+                                      final boolean replacing) {
+        for (final String packageName : packageNames) {
+            onPackageRemoved(packageName, user);
+        }
+    }
+
+    @Override
+    public void onPackagesUnsuspended(final String[] packageNames, final UserHandle user) {
+        for (final String packageName : packageNames) {
+            onPackageAdded(packageName, user);
+        }
+    }
+}
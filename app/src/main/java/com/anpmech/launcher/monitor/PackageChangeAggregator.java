@@ -0,0 +1,336 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.monitor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.anpmech.launcher.BuildConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class collects package changes over a short window, and delivers them as one batch.
+ * <p>
+ * Changes are deduplicated per package and user, so a package which disappears and reappears
+ * within the window, as it does during an update, is delivered as a single modification. The
+ * window is extended as long as changes keep arriving, up to {@link #MAX_DELAY}.
+ * <p>
+ * Changes may be posted from any thread, such as the main thread {@link PackageChangedReceiver}
+ * is called on, or the background thread of a {@link LauncherAppsMonitor}. The listener is always
+ * called on the main thread.
+ */
+public class PackageChangeAggregator implements PackageChangeCallback {
+
+    /**
+     * The time to wait for further changes after a change, in milliseconds.
+     */
+    private static final long DEBOUNCE_DELAY = 250L;
+
+    /**
+     * The longest time a change is held back, in milliseconds.
+     */
+    private static final long MAX_DELAY = 1000L;
+
+    private static final String TAG = "PackageChangeAggregator";
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Listener mListener;
+
+    /**
+     * The pending changes, keyed by package and user, in order of arrival.
+     */
+    private final Map<String, PackageChange> mPending = new LinkedHashMap<>();
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable mInvalidate = new Runnable() {
+        @Override
+        public void run() {
+            mListener.onPackagesInvalidated();
+        }
+    };
+
+    /**
+     * The uptime the first pending change arrived, {@code 0L} if there are none. Guarded by
+     * {@link #mPending}.
+     */
+    private long mFirstChangeTime;
+
+    /**
+     * The sole constructor.
+     *
+     * @param listener The listener to deliver the batched changes to.
+     */
+    public PackageChangeAggregator(@NonNull final Listener listener) {
+        mListener = listener;
+    }
+
+    private static int[] getUids(final int[] uids) {
+        final int[] result;
+
+        if (uids == null || uids.length == 0) {
+            result = new int[]{PackageChange.UNKNOWN_UID};
+        } else {
+            result = uids;
+        }
+
+        return result;
+    }
+
+    /**
+     * This method delivers all pending changes immediately.
+     */
+    public void flush() {
+        final Collection<PackageChange> changes;
+
+        synchronized (mPending) {
+            mHandler.removeCallbacks(mFlush);
+            mFirstChangeTime = 0L;
+            changes = new ArrayList<>(mPending.values());
+            mPending.clear();
+        }
+
+        if (!changes.isEmpty()) {
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Delivering " + changes.size() + " package changes.");
+            }
+            mListener.onPackagesChanged(changes);
+        }
+    }
+
+    @Override
+    public void onPackageAppeared(final String activityName, final int[] uids) {
+        for (final int uid : getUids(uids)) {
+            post(new PackageChange(activityName, uid, null, PackageChange.APPEARED));
+        }
+    }
+
+    @Override
+    public void onPackageAppeared(final String packageName, final UserHandle user) {
+        post(new PackageChange(packageName, PackageChange.UNKNOWN_UID, user,
+                PackageChange.APPEARED));
+    }
+
+    @Override
+    public void onPackageDisappeared(final String activityName, final int[] uids) {
+        for (final int uid : getUids(uids)) {
+            post(new PackageChange(activityName, uid, null, PackageChange.DISAPPEARED));
+        }
+    }
+
+    @Override
+    public void onPackageDisappeared(final String packageName, final UserHandle user) {
+        post(new PackageChange(packageName, PackageChange.UNKNOWN_UID, user,
+                PackageChange.DISAPPEARED));
+    }
+
+    @Override
+    public void onPackageModified(final String activityName, final int uid) {
+        post(new PackageChange(activityName, uid, null, PackageChange.MODIFIED));
+    }
+
+    @Override
+    public void onPackageModified(final String packageName, final UserHandle user) {
+        post(new PackageChange(packageName, PackageChange.UNKNOWN_UID, user,
+                PackageChange.MODIFIED));
+    }
+
+    @Override
+    public void onPackagesInvalidated() {
+        synchronized (mPending) {
+            mHandler.removeCallbacks(mFlush);
+            mFirstChangeTime = 0L;
+            mPending.clear();
+        }
+
+        mHandler.post(mInvalidate);
+    }
+
+    /**
+     * This method adds a change to the pending changes, combining it with a pending change for
+     * the same package and user, and schedules the delivery.
+     *
+     * @param change The change to add.
+     */
+    private void post(final PackageChange change) {
+        final String key = change.getKey();
+        final int action = change.getAction();
+
+        synchronized (mPending) {
+            final PackageChange pending = mPending.get(key);
+            int combined = action;
+
+            if (pending != null) {
+                final int previous = pending.getAction();
+
+                if (action == PackageChange.APPEARED && previous != PackageChange.APPEARED) {
+                    // Removed and added again, as during an update.
+                    combined = PackageChange.MODIFIED;
+                } else if (action == PackageChange.MODIFIED &&
+                        previous == PackageChange.APPEARED) {
+                    combined = PackageChange.APPEARED;
+                }
+            }
+
+            if (combined == action) {
+                mPending.put(key, change);
+            } else {
+                mPending.put(key, new PackageChange(change.getPackageName(), change.getUid(),
+                        change.getUser(), combined));
+            }
+
+            final long now = SystemClock.uptimeMillis();
+            if (mFirstChangeTime == 0L) {
+                mFirstChangeTime = now;
+            }
+
+            mHandler.removeCallbacks(mFlush);
+            mHandler.postAtTime(mFlush,
+                    Math.min(now + DEBOUNCE_DELAY, mFirstChangeTime + MAX_DELAY));
+        }
+    }
+
+    /**
+     * This interface receives the batched package changes.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the main thread with the changes collected over a window.
+         *
+         * @param changes The changes, at most one per package and user.
+         */
+        void onPackagesChanged(Collection<PackageChange> changes);
+
+        /**
+         * Called on the main thread when package changes were lost, and every package must be
+         * checked again.
+         */
+        void onPackagesInvalidated();
+    }
+
+    /**
+     * This class describes a change to a package for a single user.
+     */
+    public static final class PackageChange {
+
+        /**
+         * The package appeared on the system.
+         */
+        public static final int APPEARED = 0;
+
+        /**
+         * The package was removed from the system.
+         */
+        public static final int DISAPPEARED = 2;
+
+        /**
+         * An existing package was updated, or its disabled state changed.
+         */
+        public static final int MODIFIED = 1;
+
+        /**
+         * The UID used when the broadcast did not carry one.
+         */
+        public static final int UNKNOWN_UID = -1;
+
+        private final int mAction;
+
+        private final String mPackageName;
+
+        private final int mUid;
+
+        private final UserHandle mUser;
+
+        private PackageChange(final String packageName, final int uid,
+                              @Nullable final UserHandle user, final int action) {
+            mPackageName = packageName;
+            mUid = uid;
+            mUser = user;
+            mAction = action;
+        }
+
+        /**
+         * This method returns the change to the package.
+         *
+         * @return One of {@link #APPEARED}, {@link #MODIFIED} or {@link #DISAPPEARED}.
+         */
+        public int getAction() {
+            return mAction;
+        }
+
+        /**
+         * This method returns the key changes to the same package and user are combined by.
+         *
+         * @return The package name with the user, or UID if the user is not known.
+         */
+        private String getKey() {
+            final String key;
+
+            if (mUser == null) {
+                key = mPackageName + '#' + mUid;
+            } else {
+                key = mPackageName + '@' + mUser;
+            }
+
+            return key;
+        }
+
+        public String getPackageName() {
+            return mPackageName;
+        }
+
+        /**
+         * The Unix-type UID of the package, not to be confused with a user serial.
+         *
+         * @return The UID, {@link #UNKNOWN_UID} if unknown.
+         */
+        public int getUid() {
+            return mUid;
+        }
+
+        /**
+         * The user of the package, if it was reported along with the change.
+         *
+         * @return The user, null if only the UID is known.
+         */
+        @Nullable
+        public UserHandle getUser() {
+            return mUser;
+        }
+
+        @Override
+        public String toString() {
+            return "PackageChange{" + getKey() + ", action=" + mAction + '}';
+        }
+    }
+}
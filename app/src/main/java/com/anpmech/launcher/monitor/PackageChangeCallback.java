@@ -16,6 +16,7 @@
 package com.anpmech.launcher.monitor;
 
 import android.app.Activity;
+import android.os.UserHandle;
 
 public interface PackageChangeCallback {
 
@@ -27,6 +28,14 @@ public interface PackageChangeCallback {
      */
     void onPackageAppeared(String activityName, int[] uids);
 
+    /**
+     * Called when a package appears for a known user.
+     *
+     * @param packageName The package which appeared.
+     * @param user        The user the package appeared for.
+     */
+    void onPackageAppeared(String packageName, UserHandle user);
+
     /**
      * Called when a package disappears for any reason.
      *
@@ -35,6 +44,14 @@ public interface PackageChangeCallback {
      */
     void onPackageDisappeared(String activityName, int[] uids);
 
+    /**
+     * Called when a package disappears for a known user.
+     *
+     * @param packageName The package which disappeared.
+     * @param user        The user the package disappeared for.
+     */
+    void onPackageDisappeared(String packageName, UserHandle user);
+
     /**
      * Called when an existing package is updated or its disabled state changes.
      *
@@ -42,4 +59,17 @@ public interface PackageChangeCallback {
      * @param uid          Unix-type UID which use this activity, not to be confused with a user serial.
      */
     void onPackageModified(String activityName, int uid);
+
+    /**
+     * Called when an existing package is updated or its disabled state changes for a known user.
+     *
+     * @param packageName The package which was modified.
+     * @param user        The user the package was modified for.
+     */
+    void onPackageModified(String packageName, UserHandle user);
+
+    /**
+     * Called when package changes were lost, every package must be checked again.
+     */
+    void onPackagesInvalidated();
 }
@@ -15,38 +15,32 @@
 
 package com.anpmech.launcher.monitor;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build;
-import android.os.SystemClock;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This {@link BroadcastReceiver} receives messages from the base system about package changes
- * and stores it in SharedPreferences to be acted upon later.
+ * and passes them on to a {@link PackageChangeCallback}.
  * <p>
- * This class is not thread-safe and is expected to only be called by one thread at a time, in
- * sequence per the Android documentation.
+ * Changes which arrive while there is no callback are held in a bounded buffer, which keeps only
+ * the latest change per package and users, and are delivered as soon as a callback is set. If
+ * the buffer overflows, the callback is told to check every package instead.
  */
 public class PackageChangedReceiver extends BroadcastReceiver {
 
     /**
-     * This is an action to be used when there is no callback.
+     * The maximum number of package changes held while there is no callback.
      */
-    private static final String ACTION_DELAYED = "ActionDelayed";
-
-    /**
-     * This is storage for Intents that arrive when {@link #sCallback} is null.
-     */
-    private static final List<Intent> DELAYED_INTENTS = new ArrayList<>(2);
+    private static final int MAX_PENDING = 128;
 
     /**
      * An action was received noting that a package appeared on the system.
@@ -63,6 +57,17 @@ public class PackageChangedReceiver extends BroadcastReceiver {
      */
     private static final int PACKAGE_DISAPPEARED = 2;
 
+    /**
+     * This is storage for changes that arrive when {@link #sCallback} is null, keyed by package
+     * and users.
+     */
+    private static final Map<String, PendingChange> PENDING = new ConcurrentHashMap<>();
+
+    /**
+     * Set if changes were dropped from {@link #PENDING}, every package must be checked again.
+     */
+    private static final AtomicBoolean RESCAN_REQUIRED = new AtomicBoolean();
+
     /**
      * The class log identifier.
      */
@@ -71,7 +76,7 @@ public class PackageChangedReceiver extends BroadcastReceiver {
     /**
      * The storage for the callback implementation, called upon receipt.
      */
-    private static PackageChangeCallback sCallback;
+    private static volatile PackageChangeCallback sCallback;
 
     /**
      * This method retrieves the Unix-type UIDs from an {@link Intent} and returns them.
@@ -85,8 +90,8 @@ public class PackageChangedReceiver extends BroadcastReceiver {
 
         if (intent.hasExtra(Intent.EXTRA_UID)) {
             uids = new int[]{intent.getIntExtra(Intent.EXTRA_UID, -1)};
-        } else if (intent.hasExtra(Intent.EXTRA_CHANGED_PACKAGE_LIST)) {
-            uids = intent.getIntArrayExtra(Intent.EXTRA_CHANGED_PACKAGE_LIST);
+        } else if (intent.hasExtra(Intent.EXTRA_CHANGED_UID_LIST)) {
+            uids = intent.getIntArrayExtra(Intent.EXTRA_CHANGED_UID_LIST);
         } else {
             uids = new int[]{-1};
         }
@@ -124,9 +129,6 @@ public class PackageChangedReceiver extends BroadcastReceiver {
                 sendPackageName(PACKAGE_CHANGED, getUids(intent),
                         intent.getData().getSchemeSpecificPart());
                 break;
-            case ACTION_DELAYED:
-                // This will happen if a second intent processes the delayed intent first.
-                break;
             default:
                 Log.w(TAG, "Received action without reaction: " + action);
                 break;
@@ -153,6 +155,76 @@ public class PackageChangedReceiver extends BroadcastReceiver {
         return filter;
     }
 
+    /**
+     * This method holds a change until a callback is set.
+     *
+     * @param action      The action which took place.
+     * @param users       The user(s) assigned to the package.
+     * @param packageName The package which appeared, changed or disappeared.
+     */
+    private static void buffer(final int action, final int[] users, final String packageName) {
+        if (!RESCAN_REQUIRED.get()) {
+            final String key = packageName + '#' + Arrays.toString(users);
+
+            if (PENDING.size() >= MAX_PENDING && !PENDING.containsKey(key)) {
+                Log.w(TAG, "Too many package changes without a callback, rescan required.");
+                RESCAN_REQUIRED.set(true);
+                PENDING.clear();
+            } else {
+                Log.d(TAG, "Callback was null, holding change for: " + packageName);
+                PENDING.put(key, new PendingChange(action, users, packageName));
+            }
+        }
+    }
+
+    /**
+     * This method calls the callback for a single change.
+     *
+     * @param callback    The callback to call.
+     * @param action      The action which took place.
+     * @param users       The user(s) assigned to the package.
+     * @param packageName The package which appeared, changed or disappeared.
+     */
+    private static void dispatch(final PackageChangeCallback callback, final int action,
+                                 final int[] users, final String packageName) {
+        switch (action) {
+            case PACKAGE_APPEARED:
+                Log.d(TAG, "Package appeared: " + packageName);
+                callback.onPackageAppeared(packageName, users);
+                break;
+            case PACKAGE_CHANGED:
+                Log.d(TAG, "Package changed: " + packageName);
+                callback.onPackageModified(packageName, users[0]);
+                break;
+            case PACKAGE_DISAPPEARED:
+                Log.d(TAG, "Package disappeared: " + packageName);
+                callback.onPackageDisappeared(packageName, users);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * This method delivers the changes held while there was no callback.
+     *
+     * @param callback The callback to deliver the changes to.
+     */
+    private static void drain(final PackageChangeCallback callback) {
+        if (RESCAN_REQUIRED.getAndSet(false)) {
+            PENDING.clear();
+            callback.onPackagesInvalidated();
+        }
+
+        for (final Map.Entry<String, PendingChange> entry : PENDING.entrySet()) {
+            final PendingChange change = entry.getValue();
+
+            if (PENDING.remove(entry.getKey(), change)) {
+                dispatch(callback, change.mAction, change.mUsers, change.mPackageName);
+            }
+        }
+    }
+
     /**
      * This method is used to implement the callbacks.
      *
@@ -168,83 +240,61 @@ public class PackageChangedReceiver extends BroadcastReceiver {
                     newPackage = newPackage.trim();
                 }
 
-                switch (action) {
-                    case PACKAGE_APPEARED:
-                        Log.d(TAG, "Package appeared: " + newPackage);
-                        sCallback.onPackageAppeared(newPackage, users);
-                        break;
-                    case PACKAGE_CHANGED:
-                        Log.d(TAG, "Package changed: " + newPackage);
-                        sCallback.onPackageModified(newPackage, users[0]);
-                        break;
-                    case PACKAGE_DISAPPEARED:
-                        Log.d(TAG, "Package disappeared: " + newPackage);
-                        sCallback.onPackageDisappeared(newPackage, users);
-                        break;
-                    default:
-                        break;
+                final PackageChangeCallback callback = sCallback;
+                if (callback == null) {
+                    buffer(action, users, newPackage);
+                } else {
+                    dispatch(callback, action, users, newPackage);
                 }
             }
         }
     }
 
     /**
-     * Set a {@link PackageChangeCallback} to call after a change has been received.
+     * Set a {@link PackageChangeCallback} to call after a change has been received. Changes
+     * received while there was no callback are delivered to the callback immediately.
      *
      * @param callback The implementation to callback.
      */
     public static void setCallback(final PackageChangeCallback callback) {
         sCallback = callback;
+
+        if (callback != null) {
+            drain(callback);
+        }
     }
 
     /**
      * This method will be called by the system when a package addition, modification or removal
      * has been performed.
-     * <p>
-     * Intents received when there is no callback will be stored in {@link #DELAYED_INTENTS}.
-     * The window that Intents are delayed should be minimal.
      *
      * @param context The current context.
-     * @param intent  The Intent noting the changes, or a blank intent signifing .
+     * @param intent  The Intent noting the changes.
      */
     @Override
     public void onReceive(final Context context, final Intent intent) {
-        final String intentAction = intent.getAction();
-
-        if (intentAction == null) {
+        if (intent.getAction() == null) {
             Log.w(TAG, "Received a Intent with no action.");
-        } else if (sCallback == null) {
-            Log.d(TAG, "Callback was null, delaying intent: " + intent);
-            if (!ACTION_DELAYED.equals(intentAction)) {
-                DELAYED_INTENTS.add(intent);
-            }
+        } else {
+            actOnIntent(intent);
+        }
+    }
 
-            final Intent restartServiceIntent
-                    = new Intent(ACTION_DELAYED, null, context, PackageChangedReceiver.class);
-            final PendingIntent restartService = PendingIntent
-                    .getBroadcast(context, 1, restartServiceIntent, PendingIntent.FLAG_ONE_SHOT);
-            final AlarmManager alarmService =
-                    (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-            final long halfSecond = 500L;
+    /**
+     * A change held while there was no callback.
+     */
+    private static final class PendingChange {
 
-            alarmService.set(AlarmManager.ELAPSED_REALTIME,
-                    SystemClock.elapsedRealtime() + halfSecond, restartService);
-        } else {
-            if (DELAYED_INTENTS.isEmpty()) {
-                actOnIntent(intent);
-            } else {
-                if (!ACTION_DELAYED.equals(intentAction)) {
-                    DELAYED_INTENTS.add(intent);
-                }
+        private final int mAction;
 
-                final ListIterator<Intent> iterator = DELAYED_INTENTS.listIterator();
+        private final String mPackageName;
 
-                while (iterator.hasNext()) {
-                    final Intent processingIntent = iterator.next();
-                    actOnIntent(processingIntent);
-                    iterator.remove();
-                }
-            }
+        private final int[] mUsers;
+
+        private PendingChange(final int action, final int[] users, final String packageName) {
+            mAction = action;
+            mUsers = users;
+            mPackageName = packageName;
         }
     }
 }
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.usage;
+
+import android.annotation.TargetApi;
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.anpmech.launcher.BuildConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class ingests foreground and background events from the {@link UsageStatsManager}, and
+ * keeps the recency and foreground time of each activity.
+ * <p>
+ * Events are read incrementally, starting from the end of the last ingestion. Only events of
+ * launchable activities are kept, attributed to the component they are launched by, and
+ * activities which are no longer launchable are dropped, so the store is bounded by the launchable
+ * activities. The statistics are held in parallel primitive arrays, indexed by activity, and
+ * persisted along with the cursor.
+ * <p>
+ * This class is thread-safe, {@link #ingest(UsageStatsManager, long, Map)} performs binder calls
+ * and I/O, and should not be called from the main thread.
+ */
+final class UsageEventStore {
+
+    private static final String FILE_NAME = "usage_events.store";
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * This is used to recognize a store file.
+     */
+    private static final int MAGIC = 0x4b4c5545;
+
+    private static final String TAG = "UsageEventStore";
+
+    /**
+     * The store format version, increment this if the format changes.
+     */
+    private static final int VERSION = 1;
+
+    private final File mFile;
+
+    /**
+     * The index into the parallel arrays, keyed by flattened component.
+     */
+    private final Map<String, Integer> mIndex = new HashMap<>();
+
+    private final Object mLock = new Object();
+
+    /**
+     * Lock used to serialize writes of the store, so {@link #mLock} is not held during I/O.
+     */
+    private final Object mWriteLock = new Object();
+
+    /**
+     * The foreground time of each package, summed from the activities of the package.
+     */
+    private final Map<String, long[]> mPackageTimes = new HashMap<>();
+
+    /**
+     * The end of the last ingestion, events before this time have been ingested.
+     */
+    private long mCursor;
+
+    /**
+     * The flattened component of each activity.
+     */
+    private String[] mKeys = new String[INITIAL_CAPACITY];
+
+    /**
+     * The last time each activity moved to the background, or the foreground if it has not yet.
+     */
+    private long[] mLastTimeUsed = new long[INITIAL_CAPACITY];
+
+    private boolean mLoaded;
+
+    /**
+     * The time each activity moved to the foreground, {@code 0L} if it is not in the foreground.
+     */
+    private long[] mOpenSince = new long[INITIAL_CAPACITY];
+
+    private int mSize;
+
+    /**
+     * The total foreground time of each activity.
+     */
+    private long[] mTotalTime = new long[INITIAL_CAPACITY];
+
+    /**
+     * The time of the earliest event ingested, {@code Long.MAX_VALUE} if none were.
+     */
+    private long mWindowStart = Long.MAX_VALUE;
+
+    /**
+     * The sole constructor.
+     *
+     * @param context The current context.
+     */
+    UsageEventStore(@NonNull final Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static void close(@Nullable final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                Log.v(TAG, "Failed to close the store.", e);
+            }
+        }
+    }
+
+    private static String getPackageName(final String key) {
+        return key.substring(0, key.indexOf('/'));
+    }
+
+    /**
+     * This method returns the foreground time of an activity.
+     *
+     * @param key The flattened component of the activity.
+     * @return The foreground time of the activity in milliseconds, {@code -1L} if no event has
+     * been ingested for the activity.
+     */
+    long getForegroundTime(@NonNull final String key) {
+        synchronized (mLock) {
+            final Integer index = mIndex.get(key);
+
+            return index == null ? -1L : mTotalTime[index];
+        }
+    }
+
+    /**
+     * This method returns the last time an activity was used.
+     *
+     * @param key The flattened component of the activity.
+     * @return The last time the activity was used, {@code -1L} if no event has been ingested for
+     * the activity.
+     */
+    long getLastTimeUsed(@NonNull final String key) {
+        synchronized (mLock) {
+            final Integer index = mIndex.get(key);
+
+            return index == null ? -1L : mLastTimeUsed[index];
+        }
+    }
+
+    /**
+     * This method returns the foreground time of all activities of a package.
+     *
+     * @param packageName The package to return the foreground time for.
+     * @return The foreground time of the package in milliseconds, {@code -1L} if no event has
+     * been ingested for the package.
+     */
+    long getPackageForegroundTime(@NonNull final String packageName) {
+        synchronized (mLock) {
+            final long[] time = mPackageTimes.get(packageName);
+
+            return time == null ? -1L : time[0];
+        }
+    }
+
+    /**
+     * This method returns the time of the earliest event ingested. Activities without events
+     * were not used since this time.
+     *
+     * @return The time of the earliest event, {@code Long.MAX_VALUE} if no event was ingested.
+     */
+    long getWindowStart() {
+        synchronized (mLock) {
+            return mWindowStart;
+        }
+    }
+
+    private int getOrAddIndex(final String key) {
+        Integer index = mIndex.get(key);
+
+        if (index == null) {
+            if (mSize == mKeys.length) {
+                final int capacity = mSize * 2;
+
+                mKeys = Arrays.copyOf(mKeys, capacity);
+                mLastTimeUsed = Arrays.copyOf(mLastTimeUsed, capacity);
+                mOpenSince = Arrays.copyOf(mOpenSince, capacity);
+                mTotalTime = Arrays.copyOf(mTotalTime, capacity);
+            }
+
+            index = mSize;
+            mKeys[index] = key;
+            mIndex.put(key, index);
+            mSize++;
+        }
+
+        return index;
+    }
+
+    /**
+     * This method reads the usage events since the last ingestion into this store.
+     *
+     * @param manager    The manager to query the events from.
+     * @param now        The end of the interval to ingest.
+     * @param components The flattened launchable components, keyed by the flattened components
+     *                   usage events may name them by. Events of other activities are dropped.
+     * @return {@code true} if any activity statistics changed, {@code false} otherwise.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    boolean ingest(@NonNull final UsageStatsManager manager, final long now,
+                   @NonNull final Map<String, String> components) {
+        final long cursor;
+        boolean changed;
+
+        synchronized (mLock) {
+            if (!mLoaded) {
+                read();
+                mLoaded = true;
+            }
+
+            changed = retain(components.values());
+            cursor = mCursor;
+        }
+
+        final UsageEvents events = manager.queryEvents(cursor, now);
+        final UsageEvents.Event event = new UsageEvents.Event();
+        final StoreSnapshot snapshot;
+
+        synchronized (mLock) {
+            while (events.hasNextEvent()) {
+                events.getNextEvent(event);
+                final String className = event.getClassName();
+                final int type = event.getEventType();
+                final String key;
+
+                if (className == null) {
+                    key = null;
+                } else {
+                    key = components.get(event.getPackageName() + '/' + className);
+                }
+
+                if (key != null && (type == UsageEvents.Event.MOVE_TO_FOREGROUND ||
+                        type == UsageEvents.Event.MOVE_TO_BACKGROUND)) {
+                    final long timestamp = event.getTimeStamp();
+                    final int index = getOrAddIndex(key);
+
+                    if (type == UsageEvents.Event.MOVE_TO_FOREGROUND) {
+                        mOpenSince[index] = timestamp;
+                    } else if (mOpenSince[index] != 0L) {
+                        final long duration = timestamp - mOpenSince[index];
+
+                        mTotalTime[index] += duration;
+                        addPackageTime(getPackageName(key), duration);
+                        mOpenSince[index] = 0L;
+                    }
+
+                    mLastTimeUsed[index] = Math.max(mLastTimeUsed[index], timestamp);
+                    mWindowStart = Math.min(mWindowStart, timestamp);
+                    changed = true;
+                }
+            }
+
+            mCursor = now;
+
+            // Re-reading an interval without foreground events is harmless, skip the write.
+            if (changed) {
+                snapshot = new StoreSnapshot();
+            } else {
+                snapshot = null;
+            }
+        }
+
+        if (snapshot != null) {
+            synchronized (mWriteLock) {
+                snapshot.write();
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * This method drops the statistics of activities which are no longer launchable.
+     * <p>
+     * Must be called with {@link #mLock} held.
+     *
+     * @param launchable The flattened launchable components.
+     * @return {@code true} if any statistics were dropped, {@code false} otherwise.
+     */
+    private boolean retain(final Collection<String> launchable) {
+        final Set<String> keys = new HashSet<>(launchable);
+        int size = 0;
+
+        mIndex.clear();
+        mPackageTimes.clear();
+        for (int i = 0; i < mSize; i++) {
+            final String key = mKeys[i];
+
+            if (keys.contains(key)) {
+                mKeys[size] = key;
+                mLastTimeUsed[size] = mLastTimeUsed[i];
+                mOpenSince[size] = mOpenSince[i];
+                mTotalTime[size] = mTotalTime[i];
+                mIndex.put(key, size);
+                addPackageTime(getPackageName(key), mTotalTime[size]);
+                size++;
+            }
+        }
+
+        final boolean dropped = size != mSize;
+        if (dropped) {
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Dropped " + (mSize - size) + " activities which are not launchable.");
+            }
+            Arrays.fill(mKeys, size, mSize, null);
+            mSize = size;
+        }
+
+        return dropped;
+    }
+
+    private void addPackageTime(final String packageName, final long duration) {
+        long[] time = mPackageTimes.get(packageName);
+
+        if (time == null) {
+            time = new long[1];
+            mPackageTimes.put(packageName, time);
+        }
+
+        time[0] += duration;
+    }
+
+    private void read() {
+        if (mFile.exists()) {
+            DataInputStream in = null;
+
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    mCursor = in.readLong();
+                    mWindowStart = in.readLong();
+                    final int count = in.readInt();
+
+                    for (int i = 0; i < count; i++) {
+                        final String key = in.readUTF();
+                        final int index = getOrAddIndex(key);
+
+                        mLastTimeUsed[index] = in.readLong();
+                        mTotalTime[index] = in.readLong();
+                        mOpenSince[index] = in.readLong();
+                        addPackageTime(getPackageName(key), mTotalTime[index]);
+                    }
+                }
+            } catch (final IOException | RuntimeException e) {
+                Log.w(TAG, "Unable to read the usage event store, discarding.", e);
+                reset();
+            } finally {
+                close(in);
+            }
+        }
+    }
+
+    private void reset() {
+        mIndex.clear();
+        mPackageTimes.clear();
+        Arrays.fill(mKeys, null);
+        Arrays.fill(mLastTimeUsed, 0L);
+        Arrays.fill(mOpenSince, 0L);
+        Arrays.fill(mTotalTime, 0L);
+        mSize = 0;
+        mCursor = 0L;
+        mWindowStart = Long.MAX_VALUE;
+    }
+
+    /**
+     * This class is a copy of the store, taken with {@link #mLock} held, so it can be written
+     * without holding it.
+     */
+    private final class StoreSnapshot {
+
+        private final long mCursor;
+
+        private final String[] mKeys;
+
+        private final long[] mLastTimeUsed;
+
+        private final long[] mOpenSince;
+
+        private final long[] mTotalTime;
+
+        private final long mWindowStart;
+
+        private StoreSnapshot() {
+            final int size = mSize;
+
+            mCursor = UsageEventStore.this.mCursor;
+            mWindowStart = UsageEventStore.this.mWindowStart;
+            mKeys = Arrays.copyOf(UsageEventStore.this.mKeys, size);
+            mLastTimeUsed = Arrays.copyOf(UsageEventStore.this.mLastTimeUsed, size);
+            mOpenSince = Arrays.copyOf(UsageEventStore.this.mOpenSince, size);
+            mTotalTime = Arrays.copyOf(UsageEventStore.this.mTotalTime, size);
+        }
+
+        private void write() {
+            final File tmpFile = new File(mFile.getPath() + ".tmp");
+            DataOutputStream out = null;
+            boolean written = false;
+
+            try {
+                out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(tmpFile)));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(mCursor);
+                out.writeLong(mWindowStart);
+                out.writeInt(mKeys.length);
+
+                for (int i = 0; i < mKeys.length; i++) {
+                    out.writeUTF(mKeys[i]);
+                    out.writeLong(mLastTimeUsed[i]);
+                    out.writeLong(mTotalTime[i]);
+                    out.writeLong(mOpenSince[i]);
+                }
+
+                out.close();
+                out = null;
+                written = tmpFile.renameTo(mFile);
+            } catch (final IOException e) {
+                Log.w(TAG, "Unable to write the usage event store.", e);
+            } finally {
+                close(out);
+
+                if (!written && !tmpFile.delete()) {
+                    Log.v(TAG, "No temporary store to remove.");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.usage;
+
+import android.annotation.TargetApi;
+import android.app.usage.UsageStats;
+import android.app.usage.UsageStatsManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ResolveInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.anpmech.launcher.LaunchableActivity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * This class keeps an aggregate of the Android {@link UsageStatsManager} statistics.
+ * <p>
+ * The full usage history is only aggregated on the first refresh. Later refreshes query only the
+ * daily buckets since the last refresh, and merge them into the aggregate. As the most recent
+ * bucket is still open, its contribution to the aggregate is tracked per package so that it can
+ * be replaced, rather than counted twice, when the bucket is queried again.
+ * <p>
+ * Only launchable packages are kept. Each is assigned a slot into parallel primitive arrays, and
+ * the slot is stored in the {@link LaunchableActivity}, so a lookup while sorting is an array
+ * access.
+ * <p>
+ * Package statistics are refined by the activity level events of a {@link UsageEventStore}, so
+ * activities of the same package can be told apart.
+ * <p>
+ * Refreshes happen in the background, the getters may be called from any thread.
+ */
+public class UsageStatsCache {
+
+    /**
+     * Orders {@link UsageStats} by the start of their bucket.
+     */
+    private static final Comparator<UsageStats> BUCKET_ORDER = new BucketOrder();
+
+    /**
+     * The executor all usage statistics queries run on.
+     */
+    private static final Executor EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final String TAG = "UsageStatsCache";
+
+    private final Context mContext;
+
+    /**
+     * The activity level statistics.
+     */
+    private final UsageEventStore mEvents;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Object mLock = new Object();
+
+    /**
+     * The slot of each launchable package, keyed by package name.
+     */
+    private final Map<String, Integer> mSlots = new HashMap<>();
+
+    /**
+     * Whether the full usage history was retrieved.
+     */
+    private boolean mAvailable;
+
+    /**
+     * The start of the most recent bucket merged for each slot.
+     */
+    private long[] mBucketStart = newBuckets(INITIAL_CAPACITY);
+
+    /**
+     * The foreground time of the most recent bucket for each slot, already part of
+     * {@link #mTotalTime}.
+     */
+    private long[] mBucketTime = new long[INITIAL_CAPACITY];
+
+    /**
+     * The start of the most recent bucket queried, {@code -1L} if the full history has not yet
+     * been aggregated.
+     */
+    private long mHighWater = -1L;
+
+    private long[] mLastTimeUsed = new long[INITIAL_CAPACITY];
+
+    /**
+     * The package name of each slot.
+     */
+    private String[] mPackages = new String[INITIAL_CAPACITY];
+
+    private int mSize;
+
+    private long[] mTotalTime = new long[INITIAL_CAPACITY];
+
+    /**
+     * The sole constructor.
+     *
+     * @param context The current context.
+     */
+    public UsageStatsCache(@NonNull final Context context) {
+        mContext = context.getApplicationContext();
+        mEvents = new UsageEventStore(mContext);
+    }
+
+    private static long[] newBuckets(final int capacity) {
+        final long[] buckets = new long[capacity];
+
+        Arrays.fill(buckets, Long.MIN_VALUE);
+
+        return buckets;
+    }
+
+    /**
+     * This method returns the launchable activities for the current user.
+     * <p>
+     * Usage events name the activity which was actually started, which for an
+     * {@code activity-alias} is the target of the alias, so both the launchable component and
+     * the target it resolves to are mapped to the launchable component.
+     *
+     * @return The flattened launchable components, keyed by the flattened components usage events
+     * may name them by.
+     */
+    private Map<String, String> getLaunchableComponents() {
+        final Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.addCategory(Intent.CATEGORY_LAUNCHER);
+
+        final List<ResolveInfo> infos =
+                mContext.getPackageManager().queryIntentActivities(intent, 0);
+        final Map<String, String> components = new HashMap<>(infos.size() * 2);
+
+        for (final ResolveInfo info : infos) {
+            final ActivityInfo activityInfo = info.activityInfo;
+            final String key = activityInfo.packageName + '/' + activityInfo.name;
+
+            components.put(key, key);
+        }
+
+        for (final ResolveInfo info : infos) {
+            final ActivityInfo activityInfo = info.activityInfo;
+            final String target = activityInfo.targetActivity;
+
+            if (target != null) {
+                final String targetKey = activityInfo.packageName + '/' + target;
+
+                // A target which is launchable itself keeps its own statistics.
+                if (!components.containsKey(targetKey)) {
+                    components.put(targetKey, activityInfo.packageName + '/' + activityInfo.name);
+                }
+            }
+        }
+
+        return components;
+    }
+
+    /**
+     * This method returns the packages of launchable activities.
+     *
+     * @param components The launchable components, from {@link #getLaunchableComponents()}.
+     * @return The launchable package names.
+     */
+    private static Set<String> getPackages(final Map<String, String> components) {
+        final Set<String> packages = new HashSet<>(components.size());
+
+        for (final String key : components.values()) {
+            packages.add(key.substring(0, key.indexOf('/')));
+        }
+
+        return packages;
+    }
+
+    /**
+     * This method returns the slot of a package, assigning one if the package has none.
+     * <p>
+     * Must be called with {@link #mLock} held.
+     *
+     * @param packageName The package to return the slot for.
+     * @return The slot of the package.
+     */
+    private int getOrAddSlot(final String packageName) {
+        Integer slot = mSlots.get(packageName);
+
+        if (slot == null) {
+            if (mSize == mLastTimeUsed.length) {
+                final int capacity = mSize * 2;
+                final long[] bucketStart = newBuckets(capacity);
+
+                System.arraycopy(mBucketStart, 0, bucketStart, 0, mSize);
+                mBucketStart = bucketStart;
+                mBucketTime = Arrays.copyOf(mBucketTime, capacity);
+                mLastTimeUsed = Arrays.copyOf(mLastTimeUsed, capacity);
+                mPackages = Arrays.copyOf(mPackages, capacity);
+                mTotalTime = Arrays.copyOf(mTotalTime, capacity);
+            }
+
+            slot = mSize;
+            mPackages[slot] = packageName;
+            mSlots.put(packageName, slot);
+            mSize++;
+        }
+
+        return slot;
+    }
+
+    /**
+     * This method returns the slot of the package of a launchable, assigning one if necessary.
+     * <p>
+     * A launchable may outlive the cache which assigned its slot, so the slot is only used if it
+     * belongs to the package of the launchable.
+     * <p>
+     * Must be called with {@link #mLock} held.
+     *
+     * @param launchable The launchable to return the slot for.
+     * @return The slot of the package of the launchable.
+     */
+    private int getSlot(final LaunchableActivity launchable) {
+        final String packageName = launchable.getComponent().getPackageName();
+        int slot = launchable.getUsageSlot();
+
+        if (slot < 0 || slot >= mSize || !packageName.equals(mPackages[slot])) {
+            slot = getOrAddSlot(packageName);
+            launchable.setUsageSlot(slot);
+        }
+
+        return slot;
+    }
+
+    /**
+     * This method returns the last time an activity was used.
+     * <p>
+     * If usage events were recorded for the package of the activity, an activity without events
+     * is known not to have been used since the first event, and its package statistics are
+     * capped accordingly.
+     *
+     * @param launchable The activity to return the last usage for.
+     * @return The last time the activity was used, {@code 0L} if the activity was not used,
+     * {@code -1L} if not available for whatever reason.
+     */
+    public long getLastTimeUsed(@NonNull final LaunchableActivity launchable) {
+        final ComponentName component = launchable.getComponent();
+        long lastTimeUsed = mEvents.getLastTimeUsed(component.flattenToString());
+
+        if (lastTimeUsed == -1L) {
+            synchronized (mLock) {
+                final int slot = getSlot(launchable);
+
+                if (mAvailable) {
+                    lastTimeUsed = mLastTimeUsed[slot];
+                }
+            }
+
+            if (lastTimeUsed != -1L &&
+                    mEvents.getPackageForegroundTime(component.getPackageName()) != -1L) {
+                lastTimeUsed = Math.min(lastTimeUsed, mEvents.getWindowStart());
+            }
+        }
+
+        return lastTimeUsed;
+    }
+
+    /**
+     * This method returns the total time an activity has been in the foreground.
+     * <p>
+     * The package total is apportioned to the activity by the share of the package foreground
+     * time recorded for the activity in usage events, as events are only retained by the system
+     * for a limited time.
+     *
+     * @param launchable The activity to return the usage time for.
+     * @return The usage time in milliseconds, {@code -1L} if not available for whatever reason.
+     */
+    public long getTotalTimeInForeground(@NonNull final LaunchableActivity launchable) {
+        final ComponentName component = launchable.getComponent();
+        long totalTime = -1L;
+
+        synchronized (mLock) {
+            final int slot = getSlot(launchable);
+
+            if (mAvailable) {
+                totalTime = mTotalTime[slot];
+            }
+        }
+
+        final long eventPackageTime = mEvents.getPackageForegroundTime(component.getPackageName());
+        if (totalTime > 0L && eventPackageTime > 0L) {
+            final long eventTime = Math.max(mEvents.getForegroundTime(
+                    component.flattenToString()), 0L);
+
+            totalTime = (long) ((double) totalTime * eventTime / eventPackageTime);
+        }
+
+        return totalTime;
+    }
+
+    /**
+     * This method queries the usage statistics since the last refresh in the background.
+     *
+     * @param callback If not null, called on the main thread if the statistics changed.
+     */
+    public void refresh(@Nullable final Callback callback) {
+        if (Build.VERSION.SDK_INT > Build.VERSION_CODES.LOLLIPOP) {
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean changed = false;
+
+                    try {
+                        changed = refreshBlocking();
+                    } catch (final RuntimeException e) {
+                        Log.v(TAG, "UsageStatsManager not supported.", e);
+                    }
+
+                    if (changed && callback != null) {
+                        mHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onUsageStatsChanged();
+                            }
+                        });
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * This method queries and merges the usage statistics since the last refresh.
+     *
+     * @return {@code true} if the statistics changed, {@code false} otherwise.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP_MR1)
+    private boolean refreshBlocking() {
+        final UsageStatsManager statsManager =
+                (UsageStatsManager) mContext.getSystemService(Context.USAGE_STATS_SERVICE);
+        final long now = System.currentTimeMillis();
+        final long highWater;
+        final Map<String, String> components = getLaunchableComponents();
+        boolean changed = mEvents.ingest(statsManager, now, components);
+
+        synchronized (mLock) {
+            highWater = mHighWater;
+        }
+
+        if (highWater == -1L) {
+            final Map<String, UsageStats> history =
+                    statsManager.queryAndAggregateUsageStats(0L, now);
+            // The open bucket is already part of the history, remember its contribution.
+            final List<UsageStats> openBuckets =
+                    statsManager.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, now - 1L, now);
+            final Set<String> launchable = getPackages(components);
+            long newHighWater = now;
+
+            synchronized (mLock) {
+                for (final UsageStats stats : history.values()) {
+                    final String packageName = stats.getPackageName();
+
+                    if (launchable.contains(packageName) || mSlots.containsKey(packageName)) {
+                        final int slot = getOrAddSlot(packageName);
+
+                        mLastTimeUsed[slot] = stats.getLastTimeUsed();
+                        mTotalTime[slot] = stats.getTotalTimeInForeground();
+                    }
+                }
+
+                for (final UsageStats stats : openBuckets) {
+                    final Integer slot = mSlots.get(stats.getPackageName());
+
+                    if (slot != null) {
+                        mBucketStart[slot] = stats.getFirstTimeStamp();
+                        mBucketTime[slot] = stats.getTotalTimeInForeground();
+                    }
+                    newHighWater = Math.min(newHighWater, stats.getFirstTimeStamp());
+                }
+
+                // Without the usage permission the history is empty, keep aggregating the full
+                // history until it is granted.
+                mAvailable = !history.isEmpty();
+                if (mAvailable) {
+                    mHighWater = newHighWater;
+                }
+                changed |= mAvailable;
+            }
+        } else {
+            final List<UsageStats> buckets = new ArrayList<>(
+                    statsManager.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, highWater, now));
+
+            Collections.sort(buckets, BUCKET_ORDER);
+            synchronized (mLock) {
+                long newHighWater = mHighWater;
+
+                for (final UsageStats stats : buckets) {
+                    final Integer slot = mSlots.get(stats.getPackageName());
+
+                    // Packages without a slot are not launchable, or were never displayed.
+                    if (slot != null) {
+                        changed |= merge(slot, stats);
+                    }
+                    newHighWater = Math.max(newHighWater, stats.getFirstTimeStamp());
+                }
+
+                mHighWater = newHighWater;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * This method merges a bucket of statistics into the aggregate.
+     * <p>
+     * Must be called with {@link #mLock} held.
+     *
+     * @param slot  The slot of the package the statistics belong to.
+     * @param stats The bucket of statistics to merge.
+     * @return {@code true} if the aggregate changed, {@code false} otherwise.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean merge(final int slot, final UsageStats stats) {
+        final long bucketStart = stats.getFirstTimeStamp();
+        final long bucketTime = stats.getTotalTimeInForeground();
+        final long lastTimeUsed = stats.getLastTimeUsed();
+        boolean changed = false;
+
+        if (bucketStart == mBucketStart[slot]) {
+            if (bucketTime != mBucketTime[slot]) {
+                mTotalTime[slot] += bucketTime - mBucketTime[slot];
+                mBucketTime[slot] = bucketTime;
+                changed = true;
+            }
+        } else if (bucketStart > mBucketStart[slot]) {
+            mTotalTime[slot] += bucketTime;
+            mBucketStart[slot] = bucketStart;
+            mBucketTime[slot] = bucketTime;
+            changed = bucketTime != 0L;
+        }
+
+        if (lastTimeUsed > mLastTimeUsed[slot]) {
+            mLastTimeUsed[slot] = lastTimeUsed;
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * This interface is called when the usage statistics changed.
+     */
+    public interface Callback {
+
+        /**
+         * Called on the main thread after a refresh changed the usage statistics.
+         */
+        void onUsageStatsChanged();
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static final class BucketOrder implements Comparator<UsageStats> {
+
+        @Override
+        public int compare(final UsageStats lhs, final UsageStats rhs) {
+            return Long.compare(lhs.getFirstTimeStamp(), rhs.getFirstTimeStamp());
+        }
+    }
+}
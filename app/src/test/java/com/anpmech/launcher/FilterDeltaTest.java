@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher;
+
+import android.content.ComponentName;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class FilterDeltaTest {
+
+    private static final List<LaunchableActivity> CATALOG = Arrays.asList(
+            newLaunchable("Alpha"), newLaunchable("Bravo"), newLaunchable("Charlie"),
+            newLaunchable("Delta"), newLaunchable("Echo"));
+
+    private static LaunchableActivity newLaunchable(final String label) {
+        return new LaunchableActivity(new ComponentName("com.example", "com.example." + label),
+                label, 0L);
+    }
+
+    private static List<LaunchableActivity> select(final int... positions) {
+        final List<LaunchableActivity> selected = new ArrayList<>(positions.length);
+
+        for (final int position : positions) {
+            selected.add(CATALOG.get(position));
+        }
+
+        return selected;
+    }
+
+    private static void assertApplied(final List<LaunchableActivity> base,
+                                      final List<LaunchableActivity> values) {
+        final List<LaunchableActivity> objects = new ArrayList<>(base);
+
+        assertTrue(new LaunchableAdapter.FilterDelta<>(base, values).apply(objects));
+        assertEquals(values, objects);
+    }
+
+    @Test
+    public void applyNarrowed() {
+        assertApplied(CATALOG, select(1, 3));
+    }
+
+    @Test
+    public void applyWidened() {
+        assertApplied(select(2), CATALOG);
+    }
+
+    @Test
+    public void applyDisjoint() {
+        assertApplied(select(0, 2, 4), select(1, 3));
+    }
+
+    @Test
+    public void applyInterleaved() {
+        assertApplied(select(0, 1, 3), select(1, 2, 4));
+    }
+
+    @Test
+    public void applyEmpty() {
+        assertApplied(select(0, 4), Collections.<LaunchableActivity>emptyList());
+        assertApplied(Collections.<LaunchableActivity>emptyList(), select(0, 4));
+    }
+
+    @Test
+    public void applyUnchanged() {
+        final List<LaunchableActivity> objects = select(1, 2);
+
+        assertFalse(new LaunchableAdapter.FilterDelta<>(select(1, 2), select(1, 2))
+                .apply(objects));
+        assertEquals(select(1, 2), objects);
+    }
+
+    @Test
+    public void applyToChangedList() {
+        final List<LaunchableActivity> objects = select(0, 4);
+
+        // The displayed launchables changed since filtering started, so they are replaced.
+        assertTrue(new LaunchableAdapter.FilterDelta<>(select(0, 1), select(1, 2))
+                .apply(objects));
+        assertEquals(select(1, 2), objects);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.database.DatabaseUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class LaunchJournalTest {
+
+    private static final double DELTA = 0.001;
+
+    /**
+     * The half life of a launch, in seconds.
+     */
+    private static final long HALF_LIFE = 7L * 24L * 60L * 60L;
+
+    private static final long NOW = 1600000000L;
+
+    private LaunchJournal mJournal;
+
+    @Before
+    public void setUp() {
+        mJournal = new LaunchJournal(RuntimeEnvironment.getApplication());
+    }
+
+    @After
+    public void tearDown() {
+        mJournal.close();
+    }
+
+    @Test
+    public void addLaunch() {
+        final Map<String, double[]> scores = new HashMap<>();
+
+        LaunchJournal.addLaunch(scores, "a", NOW);
+        LaunchJournal.addLaunch(scores, "a", NOW);
+        LaunchJournal.addLaunch(scores, "b", NOW);
+
+        final Map<String, Double> decayed = LaunchJournal.getScores(scores, NOW);
+        assertEquals(2.0, decayed.get("a"), DELTA);
+        assertEquals(1.0, decayed.get("b"), DELTA);
+        assertNull(decayed.get("c"));
+    }
+
+    @Test
+    public void decay() {
+        final Map<String, double[]> scores = new HashMap<>();
+
+        LaunchJournal.addLaunch(scores, "a", NOW);
+        assertEquals(0.5, LaunchJournal.getScores(scores, NOW + HALF_LIFE).get("a"), DELTA);
+        assertEquals(0.25, LaunchJournal.getScores(scores, NOW + 2L * HALF_LIFE).get("a"),
+                DELTA);
+
+        // A launch a half life later adds to the decayed score.
+        LaunchJournal.addLaunch(scores, "a", NOW + HALF_LIFE);
+        assertEquals(1.5, LaunchJournal.getScores(scores, NOW + HALF_LIFE).get("a"), DELTA);
+    }
+
+    @Test
+    public void decayNotIntoFuture() {
+        final Map<String, double[]> scores = new HashMap<>();
+
+        LaunchJournal.addLaunch(scores, "a", NOW);
+        assertEquals(1.0, LaunchJournal.getScores(scores, NOW - HALF_LIFE).get("a"), DELTA);
+    }
+
+    @Test
+    public void compaction() {
+        final LaunchableActivity alpha = new LaunchableActivity(
+                new ComponentName("com.example", "com.example.Alpha"), "Alpha", 0L);
+        final LaunchableActivity bravo = new LaunchableActivity(
+                new ComponentName("com.example", "com.example.Bravo"), "Bravo", 10L);
+
+        for (int i = 0; i < 5; i++) {
+            mJournal.append(alpha);
+        }
+        mJournal.append(bravo);
+        mJournal.compact();
+
+        assertEquals(0L, DatabaseUtils.queryNumEntries(mJournal.getReadableDatabase(),
+                "LaunchEvents"));
+
+        // Launches appended after the compaction are added to the folded scores.
+        mJournal.append(bravo);
+        mJournal.loadScores();
+
+        final Map<String, Double> scores = mJournal.getScores();
+        assertEquals(2, scores.size());
+        assertEquals(5.0, scores.get(alpha.getKey()), DELTA);
+        assertEquals(2.0, scores.get(bravo.getKey()), DELTA);
+    }
+
+    @Test
+    public void appendWithoutComponent() {
+        mJournal.append(new LaunchableActivity(new Intent(Intent.ACTION_WEB_SEARCH), "Web", 0));
+        mJournal.loadScores();
+
+        assertTrue(mJournal.getScores().isEmpty());
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher;
+
+import android.content.ComponentName;
+import android.content.Intent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class LaunchableActivityTest {
+
+    private static final ComponentName COMPONENT =
+            new ComponentName("com.example", "com.example.Main");
+
+    @Test
+    public void stableIdKnownValues() {
+        // 64-bit FNV-1a test vectors, for launchables without a component.
+        assertEquals(0xcbf29ce484222325L, new LaunchableActivity(
+                new Intent(Intent.ACTION_WEB_SEARCH), "", 0).getStableId());
+        assertEquals(0xaf63dc4c8601ec8cL, new LaunchableActivity(
+                new Intent(Intent.ACTION_WEB_SEARCH), "a", 0).getStableId());
+        assertEquals(0x85944171f73967e8L, new LaunchableActivity(
+                new Intent(Intent.ACTION_WEB_SEARCH), "foobar", 0).getStableId());
+    }
+
+    @Test
+    public void stableIdFollowsKey() {
+        final LaunchableActivity launchable = new LaunchableActivity(COMPONENT, "Main", 0L);
+        final long id = launchable.getStableId();
+
+        assertEquals("com.example/.Main#0", launchable.getKey());
+        assertEquals(id, new LaunchableActivity(COMPONENT, "Renamed", 0L).getStableId());
+        assertNotEquals(id, new LaunchableActivity(COMPONENT, "Main", 10L).getStableId());
+        assertNotEquals(id, new LaunchableActivity(
+                new ComponentName("com.example", "com.example.Other"), "Main", 0L)
+                .getStableId());
+    }
+}
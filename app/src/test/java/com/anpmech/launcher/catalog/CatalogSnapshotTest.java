@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.catalog;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+
+import com.anpmech.launcher.LaunchableActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class CatalogSnapshotTest {
+
+    private static final double DELTA = 0.000001;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+    }
+
+    private File getFile() {
+        return new File(mContext.getCacheDir(), "catalog.snapshot");
+    }
+
+    @Test
+    public void roundTrip() {
+        final List<LaunchableActivity> launchables = new ArrayList<>();
+        final LaunchableActivity alpha = new LaunchableActivity(
+                new ComponentName("com.example", "com.example.Alpha"), "Alpha", 0L);
+        final LaunchableActivity bravo = new LaunchableActivity(
+                new ComponentName("com.example.bravo", "com.example.Bravo"), "Bravo \u00e9", 10L);
+        final Map<Long, Long> fingerprints = new HashMap<>();
+
+        alpha.setLaunchTime(1234L);
+        alpha.setPriority(1);
+        alpha.setUsageQuantity(7);
+        alpha.setUsageTime(5678L);
+        alpha.setFrecency(2.5);
+        launchables.add(alpha);
+        // Launchables without a component are not stored.
+        launchables.add(new LaunchableActivity(new Intent(Intent.ACTION_WEB_SEARCH), "Web", 0));
+        launchables.add(bravo);
+        fingerprints.put(0L, 42L);
+        fingerprints.put(10L, -42L);
+
+        CatalogSnapshot.write(mContext, launchables, fingerprints);
+
+        final Map<Long, Long> readFingerprints = new HashMap<>();
+        final List<LaunchableActivity> read = CatalogSnapshot.read(mContext, readFingerprints);
+
+        assertEquals(fingerprints, readFingerprints);
+        assertEquals(2, read.size());
+
+        final LaunchableActivity readAlpha = read.get(0);
+        assertEquals("Alpha", readAlpha.toString());
+        assertEquals(alpha.getComponent(), readAlpha.getComponent());
+        assertEquals(0L, readAlpha.getUserSerial());
+        assertEquals(1234L, readAlpha.getLaunchTime());
+        assertEquals(1, readAlpha.getPriority());
+        assertEquals(7, readAlpha.getUsageQuantity());
+        assertEquals(5678L, readAlpha.getUsageTime());
+        assertEquals(2.5, readAlpha.getFrecency(), DELTA);
+        assertEquals(alpha.getStableId(), readAlpha.getStableId());
+
+        final LaunchableActivity readBravo = read.get(1);
+        assertEquals("Bravo \u00e9", readBravo.toString());
+        assertEquals(bravo.getKey(), readBravo.getKey());
+    }
+
+    @Test
+    public void readMissing() {
+        final Map<Long, Long> fingerprints = new HashMap<>();
+
+        CatalogSnapshot.delete(mContext);
+        assertNull(CatalogSnapshot.read(mContext, fingerprints));
+        assertTrue(fingerprints.isEmpty());
+    }
+
+    @Test
+    public void readCorrupt() throws IOException {
+        final Map<Long, Long> fingerprints = new HashMap<>();
+        final FileOutputStream out = new FileOutputStream(getFile());
+
+        try {
+            out.write(new byte[]{0x4b, 0x4c, 0x43});
+        } finally {
+            out.close();
+        }
+
+        assertNull(CatalogSnapshot.read(mContext, fingerprints));
+        assertTrue(fingerprints.isEmpty());
+        assertFalse(getFile().exists());
+    }
+
+    @Test
+    public void readTruncated() throws IOException {
+        final Map<Long, Long> fingerprints = new HashMap<>();
+        final List<LaunchableActivity> launchables = new ArrayList<>();
+
+        launchables.add(new LaunchableActivity(
+                new ComponentName("com.example", "com.example.Alpha"), "Alpha", 0L));
+        fingerprints.put(0L, 42L);
+        CatalogSnapshot.write(mContext, launchables, fingerprints);
+
+        final File file = getFile();
+        final byte[] contents = Files.readAllBytes(file.toPath());
+        final FileOutputStream out = new FileOutputStream(file);
+
+        try {
+            out.write(contents, 0, contents.length - 4);
+        } finally {
+            out.close();
+        }
+
+        fingerprints.clear();
+        assertNull(CatalogSnapshot.read(mContext, fingerprints));
+        assertTrue(fingerprints.isEmpty());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2017 Hayai Software
+ * Copyright 2018-2022 The KeikaiLauncher Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anpmech.launcher.monitor;
+
+import android.os.Looper;
+
+import com.anpmech.launcher.monitor.PackageChangeAggregator.PackageChange;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class PackageChangeAggregatorTest {
+
+    private static final String PACKAGE = "com.example";
+
+    private static final int UID = 10001;
+
+    private final List<Collection<PackageChange>> mBatches = new ArrayList<>();
+
+    private PackageChangeAggregator mAggregator;
+
+    private int mInvalidations;
+
+    @Before
+    public void setUp() {
+        mAggregator = new PackageChangeAggregator(new PackageChangeAggregator.Listener() {
+            @Override
+            public void onPackagesChanged(final Collection<PackageChange> changes) {
+                mBatches.add(changes);
+            }
+
+            @Override
+            public void onPackagesInvalidated() {
+                mInvalidations++;
+            }
+        });
+    }
+
+    private PackageChange getOnlyChange() {
+        assertEquals(1, mBatches.size());
+        final Collection<PackageChange> changes = mBatches.get(0);
+        assertEquals(1, changes.size());
+
+        return changes.iterator().next();
+    }
+
+    @Test
+    public void updateCombinedToModified() {
+        mAggregator.onPackageDisappeared(PACKAGE, new int[]{UID});
+        mAggregator.onPackageAppeared(PACKAGE, new int[]{UID});
+        mAggregator.flush();
+
+        final PackageChange change = getOnlyChange();
+        assertEquals(PACKAGE, change.getPackageName());
+        assertEquals(UID, change.getUid());
+        assertEquals(PackageChange.MODIFIED, change.getAction());
+    }
+
+    @Test
+    public void modifiedAfterAppearedStaysAppeared() {
+        mAggregator.onPackageAppeared(PACKAGE, new int[]{UID});
+        mAggregator.onPackageModified(PACKAGE, UID);
+        mAggregator.flush();
+
+        assertEquals(PackageChange.APPEARED, getOnlyChange().getAction());
+    }
+
+    @Test
+    public void lastDisappearanceWins() {
+        mAggregator.onPackageAppeared(PACKAGE, new int[]{UID});
+        mAggregator.onPackageDisappeared(PACKAGE, new int[]{UID});
+        mAggregator.flush();
+
+        assertEquals(PackageChange.DISAPPEARED, getOnlyChange().getAction());
+    }
+
+    @Test
+    public void usersKeptApart() {
+        mAggregator.onPackageDisappeared(PACKAGE, new int[]{UID, UID + 100000});
+        mAggregator.onPackageAppeared(PACKAGE, new int[]{UID});
+        mAggregator.flush();
+
+        assertEquals(1, mBatches.size());
+        final Iterator<PackageChange> changes = mBatches.get(0).iterator();
+        final PackageChange first = changes.next();
+        final PackageChange second = changes.next();
+
+        assertEquals(UID, first.getUid());
+        assertEquals(PackageChange.MODIFIED, first.getAction());
+        assertEquals(UID + 100000, second.getUid());
+        assertEquals(PackageChange.DISAPPEARED, second.getAction());
+    }
+
+    @Test
+    public void missingUidsCombined() {
+        mAggregator.onPackageDisappeared(PACKAGE, (int[]) null);
+        mAggregator.onPackageAppeared(PACKAGE, new int[0]);
+        mAggregator.flush();
+
+        final PackageChange change = getOnlyChange();
+        assertEquals(PackageChange.UNKNOWN_UID, change.getUid());
+        assertEquals(PackageChange.MODIFIED, change.getAction());
+    }
+
+    @Test
+    public void deliveredAfterDebounce() {
+        mAggregator.onPackageModified(PACKAGE, UID);
+        assertTrue(mBatches.isEmpty());
+
+        shadowOf(Looper.getMainLooper()).idleFor(100L, TimeUnit.MILLISECONDS);
+        assertTrue(mBatches.isEmpty());
+
+        shadowOf(Looper.getMainLooper()).idleFor(150L, TimeUnit.MILLISECONDS);
+        assertEquals(PackageChange.MODIFIED, getOnlyChange().getAction());
+    }
+
+    @Test
+    public void deliveredWithinMaxDelay() {
+        // Changes arriving faster than the debounce delay are held back at most a second.
+        for (int i = 0; i < 5; i++) {
+            mAggregator.onPackageModified(PACKAGE + i, UID);
+            shadowOf(Looper.getMainLooper()).idleFor(200L, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(1, mBatches.size());
+        assertEquals(5, mBatches.get(0).size());
+    }
+
+    @Test
+    public void invalidationDropsPending() {
+        mAggregator.onPackageModified(PACKAGE, UID);
+        mAggregator.onPackagesInvalidated();
+        shadowOf(Looper.getMainLooper()).idle();
+        mAggregator.flush();
+
+        assertEquals(1, mInvalidations);
+        assertTrue(mBatches.isEmpty());
+    }
+}